@@ -21,26 +21,6 @@ public class AlienGameObject extends GameObject {
 //		dx = -moveSpeed;
 	}
 
-	/**
-	 * Request that this alien moved based on time elapsed
-	 * 
-	 * @param delta The time that has elapsed since last move
-	 */
-	public void move(long delta) {
-		// if we have reached the left hand side of the screen and
-		// are moving left then request a logic update 
-//		if ((dx < 0) && (x < 10)) {
-//			game.updateLogic();
-//		}
-//		// and vice vesa, if we have reached the right hand side of
-//		// the screen and are moving right, request a logic update
-//		if ((dx > 0) && (x > 750)) {
-//			game.updateLogic();
-//		}
-		
-		// proceed with normal move
-		super.move(delta);
-	}
 	
 	/**
 	 * Update the game logic related to aliens
@@ -58,12 +38,7 @@ public class AlienGameObject extends GameObject {
 //		}
 	}
 	
-	/**
-	 * Notification that this alien has collided with another entity
-	 * 
-	 * @param other The other entity
-	 */
-	public void collidedWith(GameObject other) {
-		// collisions with aliens are handled elsewhere
-	}
+    protected EntityType getEntityType() {
+        return EntityType.ALIEN;
+    }
 }
\ No newline at end of file
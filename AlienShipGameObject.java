@@ -2,15 +2,23 @@ package org.newdawn.spaceinvaders;
 
 // TODO: make it vulnerable to asteroids
 public class AlienShipGameObject extends GameObject {
+	/** The saucers that have left the game, waiting to be reused */
+	private static final ObjectPool<AlienShipGameObject> pool = new ObjectPool<AlienShipGameObject>("saucer",
+			Integer.getInteger("asteroids.pool.saucers", 8));
 	/** The speed at which the alient moves horizontally */
 	private double moveSpeed = 75;
+	/** The time between the hover sound starting over (ms) */
+	private static final int HOVER_SOUND_INTERVAL = 2000;
 	/** The game in which the entity exists */
 	private Game game;
+    /** The time between shots (ms) */
     private int shotTimer;
-    private int counter;
+    /** The time since the last shot (ms) */
+    private long counter;
     private int currentAngle;
-    private int hoverSoundTimer;
-    private AePlayWave aulink;
+    /** The time until the hover sound is started over (ms) */
+    private long hoverSoundTimer;
+    private int hoverSound;
 
 	/**
 	 * Create a new alien entity
@@ -19,9 +27,28 @@ public class AlienShipGameObject extends GameObject {
 	 * @param ref The sprite which should be displayed for this alien
 	 * @param x The intial x location of this alien
 	 * @param y The intial y location of this alient
+	 * @param shotTimer The time between shots (ms)
 	 */
 	public AlienShipGameObject(Game game, String ref, int x, int y, int currentAngle, int currentLevel, int shotTimer) {
 		super(ref,x,y);
+		init(game, currentAngle, currentLevel, shotTimer);
+	}
+
+	/**
+	 * Get a saucer from the pool, or create one if the pool is empty.
+	 * Takes the same arguments as the constructor.
+	 */
+	public static AlienShipGameObject create(Game game, String ref, int x, int y, int currentAngle, int currentLevel, int shotTimer) {
+		AlienShipGameObject alien = pool.obtain();
+		if (alien == null) {
+			return new AlienShipGameObject(game, ref, x, y, currentAngle, currentLevel, shotTimer);
+		}
+		alien.reinit(ref, x, y, 0);
+		alien.init(game, currentAngle, currentLevel, shotTimer);
+		return alien;
+	}
+
+	private void init(Game game, int currentAngle, int currentLevel, int shotTimer) {
 		this.shotTimer = shotTimer;
 		this.game = game;
         this.currentAngle = currentAngle;
@@ -31,35 +58,33 @@ public class AlienShipGameObject extends GameObject {
         setHorizontalMovement(Math.sin(Math.toRadians((double)currentAngle))*moveSpeed);
         setVerticalMovement(Math.cos(Math.toRadians((double)currentAngle))*moveSpeed);
 //		dx = -moveSpeed;
-        aulink = null;
+        hoverSound = -1;
 	}
 
-	/**
-	 * Request that this alien moved based on time elapsed
-	 * 
-	 * @param delta The time that has elapsed since last move
-	 */
-	public void move(long delta) {
-		// if we have reached the left hand side of the screen and
-		// are moving left then request a logic update 
-//		if ((dx < 0) && (x < 10)) {
-//			game.updateLogic();
-//		}
-//		// and vice vesa, if we have reached the right hand side of
-//		// the screen and are moving right, request a logic update
-//		if ((dx > 0) && (x > 750)) {
-//			game.updateLogic();
-//		}
-		game.updateLogic();
-		// proceed with normal move
-		super.move(delta);
-	}
+    void recycle() {
+        pool.free(this);
+    }
+
+    boolean isPooled() {
+        return true;
+    }
+
+    /**
+     * Make sure a saucer going back to the pool doesn't leave its hover
+     * sound playing
+     */
+    protected void reset() {
+        stopMusic();
+        hoverSound = -1;
+    }
+
 	
 	/**
 	 * Update the game logic related to aliens
 	 */
 	public void doLogic() {
-        if (counter == shotTimer)
+        long delta = game.getSimulationStep();
+        if (counter >= shotTimer)
         {
             ShipGameObject playerShip = (ShipGameObject)game.getP1Ship();
 //            int xDiff = getX() - playerShip.getX();
@@ -98,21 +123,20 @@ public class AlienShipGameObject extends GameObject {
 
 
             //System.out.println("xDiff = " + xDiff + " yDiff = " + yDiff + "angleToShip = " + angleToShip);
-            ShotGameObject shot = new ShotGameObject(game,"sprites\\EnemyBullet.png",getX()+getWidth()/2-3,getY()+getHeight()/2-3, angleToShip, 100, 100, "alien", 100);
-            new AePlayWave("sounds\\aliengun.wav", 1).start();
-            game.getGameObjects().add(shot);
+            ShotGameObject shot = ShotGameObject.create(game,"sprites\\EnemyBullet.png",getX()+getWidth()/2-3,getY()+getHeight()/2-3, angleToShip, 100, 100, "alien", 100);
+            SoundMixer.get().trigger("sounds\\aliengun.wav", SoundCategory.WEAPON, SoundMixer.QUIET, 0);
+            game.addEntity(shot);
             counter = 0;
         }
         else
-            counter++;
+            counter += delta;
 
-        if (hoverSoundTimer == 0) {
-            aulink = new AePlayWave("sounds\\asteroids_saucer.wav");
-            aulink.start();
-            hoverSoundTimer = 200;
+        if (hoverSoundTimer <= 0) {
+            hoverSound = SoundMixer.get().play("sounds\\asteroids_saucer.wav", SoundCategory.AMBIENT, 1, 0);
+            hoverSoundTimer = HOVER_SOUND_INTERVAL;
         }
         else
-            hoverSoundTimer--;
+            hoverSoundTimer -= delta;
 		// swap over horizontal movement and move down the
 		// screen a bit
 //		dx = -dx;
@@ -127,33 +151,33 @@ public class AlienShipGameObject extends GameObject {
 	}
 
     public void stopMusic() {
-        if (aulink != null)
-            aulink.stopMusic();
+        SoundMixer.get().stop(hoverSound);
     }
 	
+    protected EntityType getEntityType() {
+        return EntityType.ALIEN_SHIP;
+    }
+
 	/**
-	 * Notification that this alien has collided with another entity
+	 * Notification that this saucer has flown into an asteroid, which
+	 * destroys both
 	 * 
-	 * @param other The other entity
+	 * @param asteroid The asteroid the saucer hit
 	 */
-	public void collidedWith(GameObject other) {
-		// collisions with aliens are handled elsewhere
-        if (other instanceof AsteroidGameObject) {
-            if (((AsteroidGameObject) other).isBig()) {
-                game.removeEntity(this);
-                stopMusic();
-                game.removeEntity(other);
-                game.bigAsteroidDestroyed(other);
-                game.notifyAsteroidKilled();
-
-            }
-            else {
-                game.removeEntity(other);
-                game.notifyAsteroidKilled();
-                game.removeEntity(this);
-                stopMusic();
-            }
-            game.refreshRemoval();
+	public void hitAsteroid(AsteroidGameObject asteroid) {
+        if (asteroid.isBig()) {
+            game.removeEntity(this);
+            stopMusic();
+            game.removeEntity(asteroid);
+            game.bigAsteroidDestroyed(asteroid);
+            game.notifyAsteroidKilled();
+
+        }
+        else {
+            game.removeEntity(asteroid);
+            game.notifyAsteroidKilled();
+            game.removeEntity(this);
+            stopMusic();
         }
 	}
 }
\ No newline at end of file
@@ -6,9 +6,13 @@ import java.awt.*;
  * An object representing an asteroid
  */
 public class AsteroidGameObject extends GameObject {
+	/** The asteroids that have left the game, waiting to be reused */
+	private static final ObjectPool<AsteroidGameObject> pool = new ObjectPool<AsteroidGameObject>("asteroid",
+			Integer.getInteger("asteroids.pool.asteroids", 128));
 	/** The speed at which the alient moves horizontally */
 	private double moveSpeed;
-    private int currentAngle;
+    /** The angle the asteroid has spun to, kept fractional so slow spins add up */
+    private double currentAngle;
     private boolean big;
 	/** The game in which the entity exists */
 	private Game game;
@@ -23,6 +27,24 @@ public class AsteroidGameObject extends GameObject {
 	 */
 	public AsteroidGameObject(Game game, String ref, int x, int y, int currentAngle, boolean big, int currentLevel) {
 		super(ref,x,y, currentAngle);
+		init(game, currentAngle, big, currentLevel);
+	}
+
+	/**
+	 * Get an asteroid from the pool, or create one if the pool is empty.
+	 * Takes the same arguments as the constructor.
+	 */
+	public static AsteroidGameObject create(Game game, String ref, int x, int y, int currentAngle, boolean big, int currentLevel) {
+		AsteroidGameObject asteroid = pool.obtain();
+		if (asteroid == null) {
+			return new AsteroidGameObject(game, ref, x, y, currentAngle, big, currentLevel);
+		}
+		asteroid.reinit(ref, x, y, currentAngle);
+		asteroid.init(game, currentAngle, big, currentLevel);
+		return asteroid;
+	}
+
+	private void init(Game game, int currentAngle, boolean big, int currentLevel) {
 		this.big = big;
 		this.game = game;
         this.currentAngle = currentAngle;
@@ -31,41 +53,29 @@ public class AsteroidGameObject extends GameObject {
         setVerticalMovement(Math.cos(Math.toRadians((double)currentAngle))*moveSpeed);
 	}
 
-	/**
-	 * Request that this alien moved based on time elapsed
-	 * 
-	 * @param delta The time that has elapsed since last move
-	 */
-	public void move(long delta) {
-		// if we have reached the left hand side of the screen and
-		// are moving left then request a logic update
-        // if we're moving left and have reached the left hand side
-        // of the screen, don't move
-        game.updateLogic();
+    void recycle() {
+        pool.free(this);
+    }
+
+    boolean isPooled() {
+        return true;
+    }
 
-//		if ((dx < 0) && (x < 10)) {
-//			game.updateLogic();
-//		}
-//		// and vice vesa, if we have reached the right hand side of
-//		// the screen and are moving right, request a logic update
-//		if ((dx > 0) && (x > 750)) {
-//			game.updateLogic();
-//		}
-		
-		// proceed with normal move
-		super.move(delta);
-	}
 
     public void draw(Graphics g) {
-        sprite.draw(g,getX(),getY(), currentAngle);
+        sprite.draw(g,getX(),getY(), (int) currentAngle);
+    }
+
+    protected RenderLayer getRenderLayer() {
+        return RenderLayer.ASTEROID;
     }
 	
 	/**
 	 * Update the game logic related to aliens
 	 */
 	public void doLogic() {
-        currentAngle += moveSpeed/50;
-        super.setRotatedAngle(currentAngle);
+        currentAngle = (currentAngle + moveSpeed/50 * game.getSimulationStep() / Game.TUNED_STEP) % 360;
+        super.setRotatedAngle((int) currentAngle);
 		// swap over horizontal movement and move down the
 		// screen a bit
 //		dx = -dx;
@@ -80,14 +90,9 @@ public class AsteroidGameObject extends GameObject {
 
 	}
 	
-	/**
-	 * Notification that this alien has collided with another entity
-	 * 
-	 * @param other The other entity
-	 */
-	public void collidedWith(GameObject other) {
-		// collisions with aliens are handled elsewhere
-	}
+    protected EntityType getEntityType() {
+        return EntityType.ASTEROID;
+    }
 
     public boolean isBig() {
         return big;
@@ -0,0 +1,79 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+/**
+ * A rectangle of a shared image (an atlas page) holding one picture.
+ * Drawing many regions of the same page one after another avoids
+ * switching source images in the rendering pipeline.
+ */
+public class AtlasRegion {
+    /** The image this region is part of */
+    private BufferedImage page;
+    /** The left edge of this region on the page */
+    private int x;
+    /** The top edge of this region on the page */
+    private int y;
+    /** The width of this region */
+    private int width;
+    /** The height of this region */
+    private int height;
+
+    /**
+     * Create a region of a page
+     *
+     * @param page The image this region is part of
+     * @param x The left edge of this region on the page
+     * @param y The top edge of this region on the page
+     * @param width The width of this region
+     * @param height The height of this region
+     */
+    public AtlasRegion(BufferedImage page, int x, int y, int width, int height) {
+        this.page = page;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Create a region covering the whole of an image that is not shared
+     *
+     * @param image The image
+     */
+    public AtlasRegion(BufferedImage image) {
+        this(image, 0, 0, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Draw this region onto the graphics context provided
+     *
+     * @param g The graphics context on which to draw
+     * @param dx The x location at which to draw
+     * @param dy The y location at which to draw
+     */
+    public void draw(Graphics g, int dx, int dy) {
+        g.drawImage(page, dx, dy, dx + width, dy + height, x, y, x + width, y + height, null);
+    }
+
+    public BufferedImage getPage() {
+        return page;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
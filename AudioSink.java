@@ -0,0 +1,42 @@
+package org.newdawn.spaceinvaders;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The destination for mixed audio produced by the SoundMixer. Keeping
+ * the output behind this interface lets the mixer run against a real
+ * sound card or, on a machine without one, against a silent sink that
+ * just keeps time.
+ */
+public interface AudioSink {
+    /**
+     * Prepare the sink to receive audio
+     *
+     * @param format The format of the data that will be written
+     * @param bufferBytes The size of the sink's internal buffer in bytes
+     * @return True if the sink is ready to receive data
+     */
+    public boolean open(AudioFormat format, int bufferBytes);
+
+    /**
+     * Write mixed audio to the sink. This blocks until there is room
+     * for the data, which is what paces the mixing thread.
+     *
+     * @param data The buffer holding the audio
+     * @param offset The offset of the first byte to write
+     * @param length The number of bytes to write
+     */
+    public void write(byte[] data, int offset, int length);
+
+    /**
+     * Check if the sink ran out of data since it was last written to
+     *
+     * @return True if playback has starved, i.e. an underrun occurred
+     */
+    public boolean isStarved();
+
+    /**
+     * Release the resources held by this sink
+     */
+    public void close();
+}
@@ -0,0 +1,30 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferStrategy;
+
+/**
+ * Draws frames to a window using accelerated page flipping
+ */
+public class BufferStrategyRenderBackend implements RenderBackend {
+    /** The strategy that allows us to use accelerated page flipping */
+    private BufferStrategy strategy;
+
+    /**
+     * Create a backend drawing through a window's buffer strategy
+     *
+     * @param strategy The buffer strategy of the window
+     */
+    public BufferStrategyRenderBackend(BufferStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public Graphics2D beginFrame() {
+        return (Graphics2D) strategy.getDrawGraphics();
+    }
+
+    public void endFrame(Graphics2D g) {
+        g.dispose();
+        strategy.show();
+    }
+}
@@ -0,0 +1,262 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compares the ways of finding colliding objects: the plain loop over
+ * every pair, the spatial hash broadphase and sweep and prune. Each is
+ * run on the same
+ * scene of drifting debris at 100, 1,000, 10,000 and 100,000 objects,
+ * reporting the pairwise tests made and the time taken per step, and
+ * checking that both find the same collisions. Run with:
+ * <pre>
+ * java org.newdawn.spaceinvaders.CollisionBenchmark [steps]
+ * </pre>
+ * The screen doesn't grow with the number of objects, so the debris is
+ * small (8 pixel) and the grid cells shrink as the scene gets crowded,
+ * aiming for a few objects per cell. With 100,000 objects testing every
+ * pair takes minutes, so the plain loop is timed on a sample of its
+ * rows and the full figure estimated from that.
+ * <p>
+ * The debris hardly moves between steps, so first a scene of fast shots
+ * among asteroids and ships is run at 10 steps a second. The shots are
+ * tested along their path, so each is paired by its swept bounds, which
+ * reach back across the edge of the screen as it wraps. Every pair, the
+ * grid and sweep and prune must find exactly the same hits each step.
+ */
+public class CollisionBenchmark {
+    /** The numbers of objects to try */
+    private static final int[] SIZES = {100, 1000, 10000, 100000};
+    /** The most pairwise tests made by the plain loop before it is sampled */
+    private static final long BRUTE_FORCE_LIMIT = 100000000L;
+    /** The targets in the scene of shots */
+    private static final String[] TARGETS = {
+        "sprites\\SmallAsteroid1.png",
+        "sprites\\Asteroid1.png",
+        "sprites\\AlienShip.png",
+        "sprites\\ShipNormal.png",
+    };
+    /** The number of shots and of targets in the scene of shots */
+    private static final int SHOTS = 300;
+    private static final int SHOT_TARGETS = 100;
+    /** The length of each step in the scene of shots (ms) */
+    private static final int SHOT_STEP = 100;
+
+    /**
+     * The entry point of the benchmark
+     *
+     * @param argv The number of steps to time at each size
+     */
+    public static void main(String argv[]) {
+        System.setProperty("java.awt.headless", "true");
+        int steps = argv.length > 0 ? Integer.parseInt(argv[0]) : 10;
+
+        Game game = new Game(new HeadlessRenderBackend(800, 600));
+        game.beginPlay();
+        checkSweptScene(game, Math.max(20, steps * 5));
+
+        ArrayList<GameObject> gameObjects = new ArrayList<GameObject>();
+        EntityStore.get().clear();
+
+        for (int size : SIZES) {
+            while (gameObjects.size() < size) {
+                gameObjects.add(AsteroidGameObject.create(game, "sprites\\Bullet.png", (int) (Math.random() * 800),
+                        (int) (Math.random() * 600), (int) (Math.random() * 360), false, 1));
+            }
+            int cellSize = (int) Math.max(8, Math.min(64, Math.sqrt(800 * 600 * 4.0 / size)));
+            SpatialHashGrid grid = new SpatialHashGrid(cellSize);
+            SweepAndPrune sweep = new SweepAndPrune();
+            CollisionPairs pairs = new CollisionPairs();
+
+            long all = (long) size * (size - 1) / 2;
+            int stride = (int) Math.max(1, all / BRUTE_FORCE_LIMIT);
+
+            // warm up, for longer with the smaller (quicker) scenes
+            for (int i = 0; i < Math.max(3, 20000 / size); i++) {
+                EntityStore.get().integrate(10);
+                bruteForce(gameObjects, stride);
+                findHits(grid, gameObjects, pairs);
+                findHits(sweep, gameObjects, pairs);
+            }
+
+            long bruteTime = 0;
+            long bruteTests = 0;
+            long bruteHits = 0;
+            long gridTime = 0;
+            long gridTests = 0;
+            long gridHits = 0;
+            long sweepTime = 0;
+            long sweepTests = 0;
+            long sweepHits = 0;
+            long sweepSwaps = 0;
+            boolean sampled = stride > 1;
+            for (int step = 0; step < steps; step++) {
+                EntityStore.get().integrate(10);
+
+                long start = System.nanoTime();
+                long tested = bruteForce(gameObjects, stride);
+                long time = System.nanoTime() - start;
+                // scale a sample up by the share of all pairs it tested
+                bruteTime += (long) (time * ((double) all / tested));
+                bruteTests += all;
+                bruteHits += stride == 1 ? lastHits : 0;
+
+                start = System.nanoTime();
+                int hits = findHits(grid, gameObjects, pairs);
+                gridTime += System.nanoTime() - start;
+                gridTests += pairs.size();
+                gridHits += hits;
+
+                start = System.nanoTime();
+                hits = findHits(sweep, gameObjects, pairs);
+                sweepTime += System.nanoTime() - start;
+                sweepTests += pairs.size();
+                sweepHits += hits;
+                sweepSwaps += sweep.getLastSwaps();
+            }
+
+            System.out.println(size + " objects:");
+            System.out.println("  every pair: " + bruteTests / steps + " tests, "
+                    + Math.round(bruteTime / 1000.0 / steps) / 1000.0 + "ms per step"
+                    + (sampled ? " (estimated from a sample)" : ", " + bruteHits / steps + " collisions"));
+            System.out.println("  spatial hash (" + cellSize + "px cells): " + gridTests / steps + " tests, "
+                    + Math.round(gridTime / 1000.0 / steps) / 1000.0 + "ms per step, " + gridHits / steps
+                    + " collisions");
+            System.out.println("  sweep and prune: " + sweepTests / steps + " tests, "
+                    + Math.round(sweepTime / 1000.0 / steps) / 1000.0 + "ms per step, " + sweepHits / steps
+                    + " collisions, " + sweepSwaps / steps + " swaps");
+            if (!sampled && (bruteHits != gridHits || bruteHits != sweepHits)) {
+                System.out.println("  MISMATCH: a broadphase missed collisions");
+            } else if (gridHits != sweepHits) {
+                System.out.println("  MISMATCH: the broadphases disagree");
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Run the scene of shots, checking every way of finding collisions
+     * finds the same hits each step
+     */
+    private static void checkSweptScene(Game game, int steps) {
+        EntityStore store = EntityStore.get();
+        store.clear();
+        ArrayList<GameObject> gameObjects = new ArrayList<GameObject>();
+        for (int i = 0; i < SHOT_TARGETS; i++) {
+            GameObject target = AsteroidGameObject.create(game, TARGETS[i % TARGETS.length], (int) (Math.random() * 800),
+                    (int) (Math.random() * 600), (int) (Math.random() * 360), false, 1);
+            target.setHorizontalMovement(Math.random() * 200 - 100);
+            target.setVerticalMovement(Math.random() * 200 - 100);
+            gameObjects.add(target);
+        }
+        for (int i = 0; i < SHOTS; i++) {
+            gameObjects.add(ShotGameObject.create(game, i % 2 == 0 ? "sprites\\Bullet.png" : "sprites\\EnemyBullet.png",
+                    (int) (Math.random() * 800), (int) (Math.random() * 600), (int) (Math.random() * 360), 0, 0, "p1",
+                    300 + (int) (Math.random() * 301)));
+        }
+
+        CollisionBroadphase[] broadphases = {new SpatialHashGrid(), new SweepAndPrune()};
+        CollisionPairs pairs = new CollisionPairs();
+        long[] expected = new long[256];
+        long[] found = new long[256];
+        long hits = 0;
+        int crossing = 0;
+        int mismatches = 0;
+        Rectangle bounds = new Rectangle();
+        for (int step = 0; step < steps; step++) {
+            store.savePositions();
+            store.integrate(SHOT_STEP);
+            for (int i = SHOT_TARGETS; i < gameObjects.size(); i++) {
+                gameObjects.get(i).getSweptBounds(bounds);
+                if (bounds.x < 0 || bounds.y < 0 || bounds.x + bounds.width > 800 || bounds.y + bounds.height > 600) {
+                    crossing++;
+                }
+            }
+
+            // every pair, in the order the sorted pairs come out in
+            int count = 0;
+            for (int p = 0; p < gameObjects.size(); p++) {
+                GameObject me = gameObjects.get(p);
+                for (int s = p + 1; s < gameObjects.size(); s++) {
+                    if (me.collidesWith(gameObjects.get(s))) {
+                        if (count == expected.length) {
+                            expected = Arrays.copyOf(expected, count * 2);
+                        }
+                        expected[count++] = ((long) p << 32) | s;
+                    }
+                }
+            }
+            hits += count;
+
+            for (int b = 0; b < broadphases.length; b++) {
+                broadphases[b].findPairs(gameObjects, pairs);
+                int foundCount = 0;
+                for (int i = 0; i < pairs.size(); i++) {
+                    GameObject me = gameObjects.get(pairs.getFirst(i));
+                    if (me.collidesWith(gameObjects.get(pairs.getSecond(i)))) {
+                        if (foundCount == found.length) {
+                            found = Arrays.copyOf(found, foundCount * 2);
+                        }
+                        found[foundCount++] = ((long) pairs.getFirst(i) << 32) | pairs.getSecond(i);
+                    }
+                }
+                if (foundCount != count || !Arrays.equals(Arrays.copyOf(found, count), Arrays.copyOf(expected, count))) {
+                    mismatches++;
+                }
+            }
+        }
+
+        System.out.println(SHOTS + " shots among " + SHOT_TARGETS + " targets, " + steps + " steps of "
+                + SHOT_STEP + "ms:");
+        System.out.println("  " + hits / steps + " collisions per step, " + crossing / steps
+                + " shots reaching across an edge of the screen per step");
+        if (mismatches > 0) {
+            System.out.println("  MISMATCH: a broadphase disagreed with every pair on " + mismatches + " steps");
+            System.exit(1);
+        }
+        store.clear();
+    }
+
+    /** The collisions found by the last call to bruteForce() */
+    private static long lastHits;
+
+    /**
+     * Test every pair in every stride'th row of the plain loop
+     *
+     * @return The number of tests made
+     */
+    private static long bruteForce(ArrayList<GameObject> gameObjects, int stride) {
+        long tests = 0;
+        long hits = 0;
+        for (int p = 0; p < gameObjects.size(); p += stride) {
+            GameObject me = gameObjects.get(p);
+            for (int s = p + 1; s < gameObjects.size(); s++) {
+                if (me.collidesWith(gameObjects.get(s))) {
+                    hits++;
+                }
+            }
+            tests += gameObjects.size() - p - 1;
+        }
+        lastHits = hits;
+        return tests;
+    }
+
+    /**
+     * Test the pairs a broadphase finds
+     *
+     * @return The number of collisions
+     */
+    private static int findHits(CollisionBroadphase broadphase, ArrayList<GameObject> gameObjects, CollisionPairs pairs) {
+        broadphase.findPairs(gameObjects, pairs);
+        int hits = 0;
+        for (int i = 0; i < pairs.size(); i++) {
+            GameObject me = gameObjects.get(pairs.getFirst(i));
+            if (me.collidesWith(gameObjects.get(pairs.getSecond(i)))) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,29 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.List;
+
+/**
+ * A quick first pass over the game objects that finds the pairs which
+ * might be touching, so the exact (and much more numerous) pairwise
+ * collision test only has to be run on those. A broadphase may report
+ * pairs that turn out not to touch, but must never leave out a pair
+ * that does.
+ */
+public interface CollisionBroadphase {
+    /**
+     * Find the pairs of objects whose swept bounds (see
+     * GameObject.getSweptBounds()) might overlap
+     *
+     * @param gameObjects The objects in the game
+     * @param pairs The list to fill in with the candidate pairs, as
+     * indices into gameObjects
+     */
+    public void findPairs(List<GameObject> gameObjects, CollisionPairs pairs);
+
+    /**
+     * Get a one line summary of the broadphase statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics();
+}
@@ -0,0 +1,16 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * What happens when two particular kinds of entity touch. Handlers are
+ * registered with a CollisionMatrix against a pair of entity types and
+ * are always given the entities in the order they were registered in.
+ */
+public interface CollisionHandler {
+    /**
+     * Notification that two entities have collided
+     *
+     * @param first The entity of the first type the handler was registered for
+     * @param second The entity of the second type the handler was registered for
+     */
+    public void collide(GameObject first, GameObject second);
+}
@@ -0,0 +1,194 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The shape of a sprite for collisions, worked out from its alpha
+ * channel when it is loaded. A sprite has a bounding circle about its
+ * center, which never changes as it turns, and a bitmask of its solid
+ * pixels for every rotation step. Each mask row is packed into longs,
+ * one bit per pixel, so two sprites are compared 64 pixels at a time.
+ * <p>
+ * The masks are made from the same rotated frames the sprite is drawn
+ * with (see RotatedSpriteCache), so two objects collide exactly when
+ * their drawn pixels overlap. A pixel counts as solid when it is at
+ * least half opaque. Locations are compared as given; the screen wraps
+ * round, and GameObject moves the other sprite to where it is closest
+ * across an edge before asking.
+ */
+public class CollisionMask {
+    /** The least alpha of a pixel counted as solid */
+    private static final int ALPHA_THRESHOLD = 128;
+
+    /** The width of the sprite */
+    private int width;
+    /** The height of the sprite */
+    private int height;
+    /** The width and height of each (square) rotated frame */
+    private int size;
+    /** The number of longs in each row of a frame */
+    private int words;
+    /** The angle (in degrees) between frames */
+    private int step;
+    /** The number of frames */
+    private int frames;
+    /** The rows of every frame, frame after frame */
+    private long[] bits;
+    /** The box around the solid pixels of each frame, as left, top, right and bottom (exclusive) */
+    private int[] boxes;
+    /** The distance from the sprite's center to its furthest solid pixel corner */
+    private double radius;
+
+    /**
+     * Work out the collision shape of a sprite
+     *
+     * @param image The image of the sprite
+     * @param step The angle in degrees between the frames the sprite is drawn at
+     * @return The collision shape
+     */
+    public static CollisionMask create(BufferedImage image, int step) {
+        return new CollisionMask(image, step);
+    }
+
+    private CollisionMask(BufferedImage image, int step) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.step = Math.max(1, step);
+        this.frames = (360 + this.step - 1) / this.step;
+        this.size = (int) Math.ceil(Math.hypot(width, height));
+        this.words = (size + 63) >> 6;
+        this.bits = new long[frames * size * words];
+        this.boxes = new int[frames * 4];
+
+        // the frame is drawn centered on the sprite's center, as worked
+        // out in whole pixels
+        double center = size / 2;
+        double furthest = 0;
+        int[] pixels = new int[size * size];
+        for (int frame = 0; frame < frames; frame++) {
+            BufferedImage rotated = RotatedSpriteCache.render(image, frame * this.step);
+            rotated.getRGB(0, 0, size, size, pixels, 0, size);
+            int base = frame * size * words;
+            int left = size;
+            int top = size;
+            int right = 0;
+            int bottom = 0;
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < size; column++) {
+                    if ((pixels[row * size + column] >>> 24) < ALPHA_THRESHOLD) {
+                        continue;
+                    }
+                    bits[base + row * words + (column >> 6)] |= 1L << (column & 63);
+                    double dx = Math.max(Math.abs(column - center), Math.abs(column + 1 - center));
+                    double dy = Math.max(Math.abs(row - center), Math.abs(row + 1 - center));
+                    furthest = Math.max(furthest, dx * dx + dy * dy);
+                    left = Math.min(left, column);
+                    top = Math.min(top, row);
+                    right = Math.max(right, column + 1);
+                    bottom = Math.max(bottom, row + 1);
+                }
+            }
+            boxes[frame * 4] = left;
+            boxes[frame * 4 + 1] = top;
+            boxes[frame * 4 + 2] = right;
+            boxes[frame * 4 + 3] = bottom;
+        }
+        this.radius = Math.sqrt(furthest);
+    }
+
+    /**
+     * Get the radius of the bounding circle, about the sprite's center
+     *
+     * @return The radius in pixels
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Get the memory taken up by the masks
+     *
+     * @return The size of the masks in bytes
+     */
+    public long getBytes() {
+        return bits.length * 8L + boxes.length * 4L;
+    }
+
+    /**
+     * Get the frame a sprite turned to the given angle is drawn with,
+     * rounding to the nearest step as the rotation cache does
+     */
+    private int frame(int angle) {
+        return Math.round((float) (((angle % 360) + 360) % 360) / step) % frames;
+    }
+
+    /**
+     * Check if a sprite with this shape overlaps another. The bounding
+     * circles are tested first and the masks only compared if they
+     * overlap.
+     *
+     * @param x The x location of this sprite
+     * @param y The y location of this sprite
+     * @param angle The angle this sprite is turned to
+     * @param other The shape of the other sprite
+     * @param otherX The x location of the other sprite
+     * @param otherY The y location of the other sprite
+     * @param otherAngle The angle the other sprite is turned to
+     * @return True if any solid pixels of the two overlap
+     */
+    public boolean overlaps(int x, int y, int angle, CollisionMask other, int otherX, int otherY, int otherAngle) {
+        long dx = (x + width / 2) - (otherX + other.width / 2);
+        long dy = (y + height / 2) - (otherY + other.height / 2);
+        double reach = radius + other.radius;
+        if (dx * dx + dy * dy >= reach * reach) {
+            return false;
+        }
+
+        // where the other frame sits relative to this one, and the
+        // area where the solid parts of both frames overlap
+        int offsetX = (otherX + other.width / 2 - other.size / 2) - (x + width / 2 - size / 2);
+        int offsetY = (otherY + other.height / 2 - other.size / 2) - (y + height / 2 - size / 2);
+        int frame = frame(angle);
+        int otherFrame = other.frame(otherAngle);
+        int left = Math.max(boxes[frame * 4], other.boxes[otherFrame * 4] + offsetX);
+        int top = Math.max(boxes[frame * 4 + 1], other.boxes[otherFrame * 4 + 1] + offsetY);
+        int right = Math.min(boxes[frame * 4 + 2], other.boxes[otherFrame * 4 + 2] + offsetX);
+        int bottom = Math.min(boxes[frame * 4 + 3], other.boxes[otherFrame * 4 + 3] + offsetY);
+        if (left >= right || top >= bottom) {
+            return false;
+        }
+
+        int base = frame * size * words;
+        int otherBase = otherFrame * other.size * other.words;
+        int firstWord = left >> 6;
+        int lastWord = (right - 1) >> 6;
+        for (int row = top; row < bottom; row++) {
+            int rowStart = base + row * words;
+            int otherRowStart = otherBase + (row - offsetY) * other.words;
+            for (int word = firstWord; word <= lastWord; word++) {
+                if ((bits[rowStart + word] & other.bitsAt(otherRowStart, (word << 6) - offsetX)) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get 64 pixels of a row, lined up so the first is bit 0. Pixels
+     * off either end of the row are clear.
+     *
+     * @param rowStart The index of the row's first long
+     * @param column The column of the first pixel, which may be negative
+     * @return The pixels as bits
+     */
+    private long bitsAt(int rowStart, int column) {
+        int word = column >> 6;
+        int shift = column & 63;
+        long result = word >= 0 && word < words ? bits[rowStart + word] >>> shift : 0;
+        if (shift != 0 && word + 1 >= 0 && word + 1 < words) {
+            result |= bits[rowStart + word + 1] << (64 - shift);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,149 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * Says which kinds of entity can collide with which, and what happens
+ * when they do. Each entity type sits on a collision layer of its own
+ * (see EntityType.getLayer()) and has a mask of the layers it collides
+ * with; a pair whose types don't appear in each other's masks is
+ * skipped before its bounds are ever tested. The pairs that do collide
+ * are handed to the handler registered for their two types, looked up
+ * in a table by type rather than worked out by each entity.
+ * <p>
+ * The masks are made up from the handlers registered, so a pair can
+ * only pass the filter if there is something to do when it collides.
+ */
+public class CollisionMatrix {
+    /** The kinds of entity by ordinal */
+    private static final EntityType[] TYPES = EntityType.values();
+
+    /** The layers each type collides with, by ordinal */
+    private int[] masks = new int[TYPES.length];
+    /** The handler for each pair of types, by first ordinal * types + second ordinal */
+    private CollisionHandler[] handlers = new CollisionHandler[TYPES.length * TYPES.length];
+    /** True where the handler for a pair takes its entities the other way round */
+    private boolean[] swapped = new boolean[TYPES.length * TYPES.length];
+    /** The pairs filtered out this step */
+    private int skipped;
+    /** The pairs let through this step */
+    private int passed;
+    /** The pairs filtered out last step */
+    private int lastSkipped;
+    /** The pairs let through last step */
+    private int lastPassed;
+    /** The pairs filtered out over all steps */
+    private long totalSkipped;
+    /** The pairs let through over all steps */
+    private long totalPassed;
+    /** The number of steps counted */
+    private long steps;
+
+    /**
+     * Say what happens when two kinds of entity collide. Both types'
+     * masks are updated so the pair passes the filter.
+     *
+     * @param first The first type, given to the handler first
+     * @param second The second type, given to the handler second
+     * @param handler The handler to call when the two collide
+     */
+    public void register(EntityType first, EntityType second, CollisionHandler handler) {
+        masks[first.ordinal()] |= second.getLayer();
+        masks[second.ordinal()] |= first.getLayer();
+        handlers[first.ordinal() * TYPES.length + second.ordinal()] = handler;
+        swapped[first.ordinal() * TYPES.length + second.ordinal()] = false;
+        if (first != second) {
+            handlers[second.ordinal() * TYPES.length + first.ordinal()] = handler;
+            swapped[second.ordinal() * TYPES.length + first.ordinal()] = true;
+        }
+    }
+
+    /**
+     * Check if two kinds of entity can collide at all
+     *
+     * @param first The first type
+     * @param second The second type
+     * @return True if a handler is registered for the pair
+     */
+    public boolean canCollide(EntityType first, EntityType second) {
+        return (masks[first.ordinal()] & second.getLayer()) != 0;
+    }
+
+    /**
+     * Check a pair of entities against the filter, counting the pairs
+     * let through and skipped
+     *
+     * @param me The first entity
+     * @param him The second entity
+     * @return True if the pair should have its bounds tested
+     */
+    public boolean accept(GameObject me, GameObject him) {
+        if ((masks[me.getTypeIndex()] & (1 << him.getTypeIndex())) == 0) {
+            skipped++;
+            return false;
+        }
+        passed++;
+        return true;
+    }
+
+    /**
+     * Tell the handler for a pair of entities that they have collided
+     *
+     * @param me The first entity
+     * @param him The second entity
+     */
+    public void dispatch(GameObject me, GameObject him) {
+        int pair = me.getTypeIndex() * TYPES.length + him.getTypeIndex();
+        CollisionHandler handler = handlers[pair];
+        if (handler == null) {
+            return;
+        }
+        if (swapped[pair]) {
+            handler.collide(him, me);
+        } else {
+            handler.collide(me, him);
+        }
+    }
+
+    /**
+     * Note the end of a step, so the pairs counted so far are reported
+     * as the last step's
+     */
+    public void endStep() {
+        lastSkipped = skipped;
+        lastPassed = passed;
+        totalSkipped += skipped;
+        totalPassed += passed;
+        steps++;
+        skipped = 0;
+        passed = 0;
+    }
+
+    /**
+     * Get the number of pairs skipped by the filter last step
+     *
+     * @return The number of pairs whose bounds were never tested
+     */
+    public int getLastSkipped() {
+        return lastSkipped;
+    }
+
+    /**
+     * Get the number of pairs let through by the filter last step
+     *
+     * @return The number of pairs whose bounds were tested
+     */
+    public int getLastPassed() {
+        return lastPassed;
+    }
+
+    /**
+     * Get a one line summary of the filter statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        return "collision filter: " + lastSkipped + " of " + (lastSkipped + lastPassed)
+                + " pairs skipped last step, " + (steps == 0 ? 0 : Math.round(totalSkipped * 10.0 / steps) / 10.0)
+                + " of " + (steps == 0 ? 0 : Math.round((totalSkipped + totalPassed) * 10.0 / steps) / 10.0)
+                + " per step on average";
+    }
+}
@@ -0,0 +1,112 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.Arrays;
+
+/**
+ * A list of pairs of game objects, as indices into the list of objects
+ * in the game, filled in by a broadphase each step. Once sorted the
+ * pairs come out in the order the plain nested loop over every pair
+ * would visit them, each pair once, so collisions are handled in the
+ * same order whichever broadphase found them.
+ */
+public class CollisionPairs {
+    /** The pairs, the lower index in the top half of each */
+    private long[] pairs = new long[256];
+    /** The number of pairs */
+    private int size;
+    /** Where each first index's pairs start while sorting */
+    private int[] starts = new int[256];
+    /** The pairs bucketed by first index while sorting */
+    private long[] sorted = new long[256];
+
+    /**
+     * Add a pair
+     *
+     * @param a The index of one object
+     * @param b The index of the other object
+     */
+    public void add(int a, int b) {
+        if (size == pairs.length) {
+            pairs = Arrays.copyOf(pairs, size * 2);
+        }
+        pairs[size++] = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    /**
+     * Put the pairs in order and drop any added more than once. The
+     * pairs are bucketed by their first index (a counting sort) and
+     * each bucket, which holds only a few pairs, sorted in place, so
+     * nothing is allocated once the buffers have grown to size.
+     *
+     * @param objects The number of objects the indices refer to
+     */
+    public void sort(int objects) {
+        if (starts.length < objects + 1) {
+            starts = new int[objects * 2 + 1];
+        }
+        if (sorted.length < size) {
+            sorted = new long[pairs.length];
+        }
+        Arrays.fill(starts, 0, objects + 1, 0);
+        for (int i = 0; i < size; i++) {
+            starts[(int) (pairs[i] >>> 32) + 1]++;
+        }
+        for (int i = 0; i < objects; i++) {
+            starts[i + 1] += starts[i];
+        }
+        for (int i = 0; i < size; i++) {
+            sorted[starts[(int) (pairs[i] >>> 32)]++] = pairs[i];
+        }
+
+        // filling in moved each start to the next bucket's start
+        int kept = 0;
+        int start = 0;
+        for (int first = 0; first < objects; first++) {
+            int end = starts[first];
+            for (int i = start + 1; i < end; i++) {
+                long pair = sorted[i];
+                int j = i - 1;
+                while (j >= start && sorted[j] > pair) {
+                    sorted[j + 1] = sorted[j];
+                    j--;
+                }
+                sorted[j + 1] = pair;
+            }
+            for (int i = start; i < end; i++) {
+                if (i == start || sorted[i] != sorted[i - 1]) {
+                    pairs[kept++] = sorted[i];
+                }
+            }
+            start = end;
+        }
+        size = kept;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the lower index of a pair
+     *
+     * @param i The index of the pair
+     * @return The index of the first object
+     */
+    public int getFirst(int i) {
+        return (int) (pairs[i] >>> 32);
+    }
+
+    /**
+     * Get the higher index of a pair
+     *
+     * @param i The index of the pair
+     * @return The index of the second object
+     */
+    public int getSecond(int i) {
+        return (int) pairs[i];
+    }
+}
@@ -0,0 +1,199 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Checks the collision masks worked out from the sprites' alpha
+ * channels against what is actually drawn, and times them against the
+ * rectangle test they replace. Run with:
+ * <pre>
+ * java org.newdawn.spaceinvaders.CollisionShapeBenchmark [trials]
+ * </pre>
+ * Each trial puts two random sprites at random angles close enough
+ * that a broadphase would pair them, draws each into an image of its
+ * own and looks for a pixel that is solid in both. The masks must agree
+ * with the drawn pixels on every trial; how often the old rectangles
+ * got it wrong is reported alongside. The same kind of pairs are then
+ * timed through both tests.
+ */
+public class CollisionShapeBenchmark {
+    /** The size of the images the sprites are drawn into */
+    private static final int CANVAS = 160;
+    /** Where the first sprite of each pair is drawn */
+    private static final int ORIGIN = 55;
+    /** The furthest the second sprite is placed from the first, on each axis */
+    private static final int SPREAD = 60;
+    /** The number of pairs timed through each test */
+    private static final int TIMED_PAIRS = 1000000;
+
+    /**
+     * The entry point of the benchmark
+     *
+     * @param argv The number of pairs to check against drawn pixels
+     */
+    public static void main(String argv[]) {
+        System.setProperty("java.awt.headless", "true");
+        int trials = argv.length > 0 ? Integer.parseInt(argv[0]) : 20000;
+
+        SpriteStore.get().preload(SpriteStore.MANIFEST);
+        Sprite[] sprites = new Sprite[SpriteStore.MANIFEST.length];
+        long bytes = 0;
+        for (int i = 0; i < sprites.length; i++) {
+            sprites[i] = SpriteStore.get().getSprite(SpriteStore.MANIFEST[i]);
+            if (sprites[i].getCollisionMask() == null) {
+                System.out.println("Collision masks are turned off (asteroids.collision.masks)");
+                System.exit(1);
+            }
+            bytes += sprites[i].getCollisionMask().getBytes();
+        }
+        System.out.println(sprites.length + " sprites, " + bytes / 1024 + "KB of masks at "
+                + RotatedSpriteCache.get().getStep() + " degree steps");
+
+        checkAgainstPixels(sprites, trials);
+        benchmark(sprites);
+        System.exit(0);
+    }
+
+    /**
+     * Compare the mask and rectangle tests with the pixels actually drawn
+     */
+    private static void checkAgainstPixels(Sprite[] sprites, int trials) {
+        BufferedImage first = new BufferedImage(CANVAS, CANVAS, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage second = new BufferedImage(CANVAS, CANVAS, BufferedImage.TYPE_INT_ARGB);
+        int[] firstPixels = new int[CANVAS * CANVAS];
+        int[] secondPixels = new int[CANVAS * CANVAS];
+        Random random = new Random(1);
+
+        int touching = 0;
+        int maskWrong = 0;
+        int rectangleHits = 0;
+        int rectangleMisses = 0;
+        for (int trial = 0; trial < trials; trial++) {
+            Sprite a = sprites[random.nextInt(sprites.length)];
+            Sprite b = sprites[random.nextInt(sprites.length)];
+            int angle = random.nextInt(360);
+            int otherAngle = random.nextInt(360);
+            int x = ORIGIN + random.nextInt(SPREAD * 2 + 1) - SPREAD;
+            int y = ORIGIN + random.nextInt(SPREAD * 2 + 1) - SPREAD;
+
+            draw(first, a, ORIGIN, ORIGIN, angle);
+            draw(second, b, x, y, otherAngle);
+            first.getRGB(0, 0, CANVAS, CANVAS, firstPixels, 0, CANVAS);
+            second.getRGB(0, 0, CANVAS, CANVAS, secondPixels, 0, CANVAS);
+            boolean drawn = false;
+            for (int i = 0; i < firstPixels.length && !drawn; i++) {
+                drawn = (firstPixels[i] >>> 24) >= 128 && (secondPixels[i] >>> 24) >= 128;
+            }
+
+            boolean masked = a.getCollisionMask().overlaps(ORIGIN, ORIGIN, angle, b.getCollisionMask(), x, y, otherAngle);
+            boolean rectangle = rectangles(a, ORIGIN, ORIGIN, b, x, y);
+            if (drawn) {
+                touching++;
+            }
+            if (masked != drawn) {
+                maskWrong++;
+            }
+            if (rectangle && !drawn) {
+                rectangleHits++;
+            }
+            if (!rectangle && drawn) {
+                rectangleMisses++;
+            }
+        }
+
+        System.out.println(trials + " pairs checked against drawn pixels, " + touching + " touching:");
+        System.out.println("  masks: " + maskWrong + " wrong");
+        System.out.println("  rectangles: " + rectangleHits + " collisions where nothing touched, "
+                + rectangleMisses + " touching pairs missed");
+        if (maskWrong > 0) {
+            System.out.println("  MISMATCH: the masks disagree with what was drawn");
+        }
+    }
+
+    /**
+     * Clear an image and draw a sprite into it
+     */
+    private static void draw(BufferedImage image, Sprite sprite, int x, int y, int angle) {
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, CANVAS, CANVAS);
+        g.setComposite(AlphaComposite.SrcOver);
+        sprite.draw(g, x, y, angle);
+        g.dispose();
+    }
+
+    /** The rectangles used by rectangles(), as GameObject kept them */
+    private static Rectangle me = new Rectangle();
+    private static Rectangle him = new Rectangle();
+
+    /**
+     * The rectangle test the masks replace
+     */
+    private static boolean rectangles(Sprite a, int x, int y, Sprite b, int otherX, int otherY) {
+        me.setBounds(x, y, a.getWidth() - 5, a.getHeight() - 5);
+        him.setBounds(otherX, otherY, b.getWidth() - 5, b.getHeight() - 5);
+        return me.intersects(him);
+    }
+
+    /**
+     * Time both tests over the same pairs
+     */
+    private static void benchmark(Sprite[] sprites) {
+        Random random = new Random(2);
+        int[] pairs = new int[TIMED_PAIRS * 6];
+        int circles = 0;
+        for (int i = 0; i < pairs.length; i += 6) {
+            pairs[i] = random.nextInt(sprites.length);
+            pairs[i + 1] = random.nextInt(sprites.length);
+            pairs[i + 2] = random.nextInt(360);
+            pairs[i + 3] = random.nextInt(360);
+            pairs[i + 4] = ORIGIN + random.nextInt(SPREAD * 2 + 1) - SPREAD;
+            pairs[i + 5] = ORIGIN + random.nextInt(SPREAD * 2 + 1) - SPREAD;
+
+            Sprite a = sprites[pairs[i]];
+            Sprite b = sprites[pairs[i + 1]];
+            double dx = (ORIGIN + a.getWidth() / 2) - (pairs[i + 4] + b.getWidth() / 2);
+            double dy = (ORIGIN + a.getHeight() / 2) - (pairs[i + 5] + b.getHeight() / 2);
+            double reach = a.getCollisionMask().getRadius() + b.getCollisionMask().getRadius();
+            if (dx * dx + dy * dy < reach * reach) {
+                circles++;
+            }
+        }
+
+        // warm up, then time each a few times and keep the best
+        long rectangleTime = Long.MAX_VALUE;
+        long maskTime = Long.MAX_VALUE;
+        int rectangleHits = 0;
+        int maskHits = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            rectangleHits = 0;
+            for (int i = 0; i < pairs.length; i += 6) {
+                if (rectangles(sprites[pairs[i]], ORIGIN, ORIGIN, sprites[pairs[i + 1]], pairs[i + 4], pairs[i + 5])) {
+                    rectangleHits++;
+                }
+            }
+            rectangleTime = Math.min(rectangleTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            maskHits = 0;
+            for (int i = 0; i < pairs.length; i += 6) {
+                if (sprites[pairs[i]].getCollisionMask().overlaps(ORIGIN, ORIGIN, pairs[i + 2],
+                        sprites[pairs[i + 1]].getCollisionMask(), pairs[i + 4], pairs[i + 5], pairs[i + 3])) {
+                    maskHits++;
+                }
+            }
+            maskTime = Math.min(maskTime, System.nanoTime() - start);
+        }
+
+        System.out.println(TIMED_PAIRS + " pairs timed:");
+        System.out.println("  rectangles: " + Math.round(rectangleTime * 10.0 / TIMED_PAIRS) / 10.0 + "ns per pair, "
+                + rectangleHits + " collisions");
+        System.out.println("  circle then mask: " + Math.round(maskTime * 10.0 / TIMED_PAIRS) / 10.0 + "ns per pair, "
+                + circles + " circles overlapping, " + maskHits + " collisions");
+    }
+}
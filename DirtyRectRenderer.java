@@ -0,0 +1,293 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Draws frames by only repainting the parts of the screen that have
+ * changed. The scene is kept in an image of its own between frames;
+ * each frame the area every object covered last frame and covers now
+ * is cleared and redrawn, and the image is then copied to the screen.
+ * <p>
+ * The old and new areas of an object are kept apart rather than joined
+ * into one, so an object wrapping from one edge of the screen to the
+ * other dirties two small areas rather than a band across the screen.
+ * Overlapping areas are merged before drawing. When the dirty area
+ * grows past a fraction of the screen (half, unless the
+ * "asteroids.dirty.threshold" property says otherwise) the whole frame
+ * is redrawn instead, as that is cheaper than many small repaints.
+ */
+public class DirtyRectRenderer {
+    /** The width of the screen */
+    private int width;
+    /** The height of the screen */
+    private int height;
+    /** The scene as drawn last frame */
+    private BufferedImage canvas;
+    /** The fraction of the screen above which the whole frame is redrawn */
+    private double threshold = Double.parseDouble(System.getProperty("asteroids.dirty.threshold", "0.5"));
+    /** The area each object covered when last drawn */
+    private IdentityHashMap<Object, Rectangle> previous = new IdentityHashMap<Object, Rectangle>();
+    /** The area each object covers this frame */
+    private IdentityHashMap<Object, Rectangle> current = new IdentityHashMap<Object, Rectangle>();
+    /** The areas to repaint this frame */
+    private ArrayList<Rectangle> dirty = new ArrayList<Rectangle>();
+    /** Rectangles no longer in use, kept to be used again so frames allocate nothing */
+    private ArrayList<Rectangle> spare = new ArrayList<Rectangle>();
+    /** The area along the top of the screen the HUD covers */
+    private Rectangle hudArea = new Rectangle();
+    /** The screen layer drawn last frame */
+    private OverlayLayer lastScreen;
+    /** True if the whole frame must be redrawn next time */
+    private boolean fullRedraw = true;
+    /** The fraction of the screen repainted last frame */
+    private double lastRatio;
+    /** The total of the fractions repainted, for the average */
+    private double totalRatio;
+    /** The number of frames drawn */
+    private long frames;
+    /** The number of frames that were redrawn in full */
+    private long fullFrames;
+
+    /**
+     * Create a renderer for a screen of the given size
+     *
+     * @param width The width of the screen
+     * @param height The height of the screen
+     */
+    public DirtyRectRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        canvas = Sprite.createCompatibleImage(width, height, Transparency.OPAQUE);
+    }
+
+    /**
+     * Set the fraction of the screen above which the whole frame is
+     * redrawn rather than the dirty areas
+     *
+     * @param threshold The fraction between 0 and 1
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Force the whole frame to be redrawn next time
+     */
+    public void invalidate() {
+        fullRedraw = true;
+    }
+
+    /**
+     * Draw a frame
+     *
+     * @param g The graphics context to draw to
+     * @param gameObjects The objects in the game
+     * @param queue The queue the objects are drawn through
+     * @param hud The layer along the top of the screen
+     * @param screen The layer over the whole screen (e.g. the title
+     * screen), or null if there isn't one
+     */
+    public void draw(Graphics2D g, List<GameObject> gameObjects, RenderQueue queue, OverlayLayer hud, OverlayLayer screen) {
+        // work out where everything is now
+        IdentityHashMap<Object, Rectangle> swap = previous;
+        previous = current;
+        current = swap;
+        for (int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            Rectangle bounds = obtain();
+            gameObject.getDrawBounds(bounds);
+            current.put(gameObject, bounds);
+        }
+
+        // a screen layer appearing, going or changing covers everything
+        if (screen != lastScreen || (screen != null && screen.hasChanged())) {
+            fullRedraw = true;
+        }
+        lastScreen = screen;
+
+        clearDirty();
+        if (!fullRedraw) {
+            collectDirty(hud);
+            fullRedraw = area(dirty) > threshold * width * height;
+        }
+        if (fullRedraw) {
+            clearDirty();
+            Rectangle all = obtain();
+            all.setBounds(0, 0, width, height);
+            dirty.add(all);
+        }
+
+        Graphics2D cg = canvas.createGraphics();
+        cg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        cg.setFont(g.getFont());
+        for (Rectangle region : dirty) {
+            repaint(cg, region, gameObjects, queue, hud, screen);
+        }
+        cg.dispose();
+        g.drawImage(canvas, 0, 0, null);
+
+        lastRatio = area(dirty) / ((double) width * height);
+        totalRatio += lastRatio;
+        frames++;
+        if (fullRedraw) {
+            fullFrames++;
+        }
+        fullRedraw = false;
+
+        // last frame's areas are finished with
+        for (Rectangle area : previous.values()) {
+            spare.add(area);
+        }
+        previous.clear();
+    }
+
+    /**
+     * Get a rectangle to use, one finished with if there is one
+     */
+    private Rectangle obtain() {
+        int last = spare.size() - 1;
+        return last < 0 ? new Rectangle() : spare.remove(last);
+    }
+
+    /**
+     * Empty the list of areas to repaint, keeping the rectangles
+     */
+    private void clearDirty() {
+        for (int i = 0; i < dirty.size(); i++) {
+            spare.add(dirty.get(i));
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Work out the areas that have changed since the last frame and
+     * merge those that overlap
+     */
+    private void collectDirty(OverlayLayer hud) {
+        for (Object gameObject : current.keySet()) {
+            Rectangle now = current.get(gameObject);
+            Rectangle before = previous.get(gameObject);
+            if (before == null) {
+                addDirty(now);
+            } else if (!before.equals(now)) {
+                addDirty(before);
+                addDirty(now);
+            }
+        }
+        // objects that have gone leave their last area to be cleared
+        for (Object gameObject : previous.keySet()) {
+            if (!current.containsKey(gameObject)) {
+                addDirty(previous.get(gameObject));
+            }
+        }
+        if (hud.hasChanged()) {
+            hudArea.setBounds(0, 0, hud.getWidth(), hud.getHeight());
+            addDirty(hudArea);
+        }
+        merge();
+    }
+
+    /**
+     * Add an area to be repainted, clipped to the screen
+     */
+    private void addDirty(Rectangle area) {
+        int left = Math.max(area.x, 0);
+        int top = Math.max(area.y, 0);
+        int right = Math.min(area.x + area.width, width);
+        int bottom = Math.min(area.y + area.height, height);
+        if (left < right && top < bottom) {
+            Rectangle clipped = obtain();
+            clipped.setBounds(left, top, right - left, bottom - top);
+            dirty.add(clipped);
+        }
+    }
+
+    /**
+     * Join overlapping dirty areas together, until none overlap
+     */
+    private void merge() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < dirty.size(); i++) {
+                Rectangle a = dirty.get(i);
+                for (int j = dirty.size() - 1; j > i; j--) {
+                    Rectangle b = dirty.get(j);
+                    if (a.intersects(b)) {
+                        a.add(b);
+                        spare.add(dirty.remove(j));
+                        merged = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear an area and redraw everything in it
+     */
+    private void repaint(Graphics2D g, Rectangle region, List<GameObject> gameObjects, RenderQueue queue, OverlayLayer hud,
+            OverlayLayer screen) {
+        g.setClip(region);
+        g.setColor(Color.black);
+        g.fillRect(region.x, region.y, region.width, region.height);
+        if (region.y < hud.getHeight()) {
+            hud.draw(g, 0, 0);
+        }
+        for (int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            if (current.get(gameObject).intersects(region)) {
+                gameObject.queueDraw(queue);
+            }
+        }
+        queue.flush(g);
+        if (screen != null) {
+            screen.draw(g, 0, 0);
+        }
+    }
+
+    private static long area(List<Rectangle> areas) {
+        long total = 0;
+        for (Rectangle area : areas) {
+            total += (long) area.width * area.height;
+        }
+        return total;
+    }
+
+    /**
+     * Get the fraction of the screen repainted last frame
+     *
+     * @return The fraction between 0 and 1
+     */
+    public double getLastRatio() {
+        return lastRatio;
+    }
+
+    /**
+     * Get the average fraction of the screen repainted each frame
+     *
+     * @return The fraction between 0 and 1
+     */
+    public double getAverageRatio() {
+        return frames == 0 ? 0 : totalRatio / frames;
+    }
+
+    /**
+     * Get a one line summary of the renderer statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        return "dirty rectangles: " + Math.round(lastRatio * 1000) / 10.0 + "% repainted last frame, "
+                + Math.round(getAverageRatio() * 1000) / 10.0 + "% on average, " + fullFrames + " of "
+                + frames + " frames redrawn in full";
+    }
+}
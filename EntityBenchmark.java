@@ -0,0 +1,185 @@
+package org.newdawn.spaceinvaders;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * Measures the cost of updating game objects: the time taken by one
+ * call to move(), the memory allocated by a whole simulation step
+ * (moving, collisions and logic), the memory allocated while shots and
+ * asteroids are created and removed every step (which the object pools
+ * should bring to nothing), and the time the entity store takes to move
+ * a very large number of asteroids. Run with:
+ * <pre>
+ * java org.newdawn.spaceinvaders.EntityBenchmark [asteroids] [steps]
+ * </pre>
+ */
+public class EntityBenchmark {
+    /**
+     * The entry point of the benchmark
+     *
+     * @param argv The number of asteroids and the number of steps
+     */
+    public static void main(String argv[]) {
+        System.setProperty("java.awt.headless", "true");
+        int asteroids = argv.length > 0 ? Integer.parseInt(argv[0]) : 1000;
+        int steps = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+
+        Game game = new Game(new HeadlessRenderBackend(800, 600));
+        game.beginPlay();
+
+        // take the ships out, so nothing can end the game while we're timing
+        ArrayList<GameObject> gameObjects = game.getGameObjects();
+        GameObject[] ships = {game.getP1Ship(), game.getP2Ship()};
+        for (GameObject ship : ships) {
+            if (ship != null) {
+                gameObjects.remove(ship);
+                ship.detach();
+            }
+        }
+        for (int i = 0; i < asteroids; i++) {
+            gameObjects.add(new AsteroidGameObject(game, "sprites\\SmallAsteroid1.png", (int) (Math.random() * 800),
+                    (int) (Math.random() * 600), (int) (Math.random() * 360), false, 1));
+        }
+
+        benchmarkMove(gameObjects, steps * 10);
+        benchmarkStep(game, steps);
+        benchmarkChurn(game, steps);
+        benchmarkStore(game, Integer.getInteger("asteroids.benchmark.bulk", 100000), steps);
+        System.exit(0);
+    }
+
+    /**
+     * Time calls to move() on every object
+     */
+    private static void benchmarkMove(ArrayList<GameObject> gameObjects, int passes) {
+        for (int pass = 0; pass < passes / 10; pass++) {
+            moveAll(gameObjects);
+        }
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            moveAll(gameObjects);
+        }
+        long time = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+        long moves = (long) passes * gameObjects.size();
+        System.out.println("move: " + Math.round((double) time / moves * 10) / 10.0 + "ns per move, "
+                + Math.round((double) allocated / moves * 10) / 10.0 + " bytes allocated per move");
+    }
+
+    private static void moveAll(ArrayList<GameObject> gameObjects) {
+        for (int i = 0; i < gameObjects.size(); i++) {
+            gameObjects.get(i).move(10);
+        }
+    }
+
+    /**
+     * Time whole simulation steps, and the memory they allocate
+     */
+    private static void benchmarkStep(Game game, int steps) {
+        for (int i = 0; i < steps / 10; i++) {
+            game.updateWorld(10);
+        }
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            game.updateWorld(10);
+        }
+        long time = System.nanoTime() - start;
+        allocated = allocatedBytes() - allocated;
+        System.out.println("step: " + game.getGameObjects().size() + " objects, "
+                + Math.round(time / 1000.0 / steps) / 1000.0 + "ms per step, "
+                + allocated / steps / 1024 + "KB allocated per step");
+    }
+
+    /**
+     * Measure the memory allocated when objects come and go every step.
+     * Everything already in the game is removed first, then each step a
+     * handful of shots and asteroids are created and those from the step
+     * before removed. Shots and asteroids are kept in opposite corners so
+     * they never hit each other.
+     */
+    private static void benchmarkChurn(Game game, int steps) {
+        ArrayList<GameObject> gameObjects = game.getGameObjects();
+        for (int i = 0; i < gameObjects.size(); i++) {
+            game.removeEntity(gameObjects.get(i));
+        }
+        game.updateWorld(10);
+
+        ArrayList<GameObject> created = new ArrayList<GameObject>();
+        for (int i = 0; i < steps / 10; i++) {
+            churn(game, created);
+        }
+        long allocated = allocatedBytes();
+        for (int i = 0; i < steps; i++) {
+            churn(game, created);
+        }
+        allocated = allocatedBytes() - allocated;
+        System.out.println("churn: " + CHURN_SHOTS + " shots and " + CHURN_ASTEROIDS + " asteroids a step, "
+                + allocated / steps + " bytes allocated per step");
+        ObjectPool.printReport(System.out);
+    }
+
+    /** The number of shots created and removed each step of the churn test */
+    private static final int CHURN_SHOTS = 8;
+    /** The number of asteroids created and removed each step of the churn test */
+    private static final int CHURN_ASTEROIDS = 3;
+
+    private static void churn(Game game, ArrayList<GameObject> created) {
+        for (int i = 0; i < created.size(); i++) {
+            game.removeEntity(created.get(i));
+        }
+        created.clear();
+        ArrayList<GameObject> gameObjects = game.getGameObjects();
+        for (int i = 0; i < CHURN_SHOTS; i++) {
+            GameObject shot = ShotGameObject.create(game, "sprites\\Bullet.png", 50, 50, i * 45, 0, 0, "p1");
+            gameObjects.add(shot);
+            created.add(shot);
+        }
+        for (int i = 0; i < CHURN_ASTEROIDS; i++) {
+            GameObject asteroid = AsteroidGameObject.create(game, "sprites\\SmallAsteroid1.png", 650, 500, i * 120,
+                    false, 1);
+            gameObjects.add(asteroid);
+            created.add(asteroid);
+        }
+        game.updateWorld(10);
+    }
+
+    /**
+     * Time the entity store moving a great many asteroids in bulk, as
+     * the game does once per step
+     */
+    private static void benchmarkStore(Game game, int asteroids, int steps) {
+        EntityStore entities = EntityStore.get();
+        for (int i = entities.getCount(); i < asteroids; i++) {
+            new AsteroidGameObject(game, "sprites\\SmallAsteroid1.png", (int) (Math.random() * 800),
+                    (int) (Math.random() * 600), (int) (Math.random() * 360), false, 1);
+        }
+        for (int i = 0; i < steps / 10; i++) {
+            entities.savePositions();
+            entities.integrate(10);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            entities.savePositions();
+            entities.integrate(10);
+        }
+        long time = System.nanoTime() - start;
+        System.out.println("entity store: " + entities.getCount() + " entities, "
+                + Math.round(time / 1000.0 / steps) / 1000.0 + "ms per step, "
+                + Math.round((double) time / steps / entities.getCount() * 10) / 10.0 + "ns per entity");
+    }
+
+    /**
+     * Get the memory allocated by this thread so far, where the JVM can
+     * tell us
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,126 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes to the list of game objects (objects joining or leaving the
+ * game) asked for during a step, held back until the step reaches a
+ * point where nothing is walking the list. Changing the list while the
+ * collision or logic loops are going through it would skip or repeat
+ * objects.
+ * <p>
+ * An object asked to leave more than once (e.g. an asteroid hit by two
+ * shots in the same step) only leaves once. All removals are applied in
+ * a single pass over the list, rather than one search of the list per
+ * removed object.
+ */
+public class EntityCommandBuffer {
+    /** The objects to add to the game */
+    private ArrayList<GameObject> spawns = new ArrayList<GameObject>();
+    /** The objects to take out of the game */
+    private ArrayList<GameObject> despawns = new ArrayList<GameObject>();
+    /** The number of removals ignored because the object was already leaving */
+    private long duplicates;
+
+    /**
+     * Ask for an object to be added to the game when the buffer is next
+     * applied
+     *
+     * @param gameObject The object to add
+     */
+    public void spawn(GameObject gameObject) {
+        spawns.add(gameObject);
+    }
+
+    /**
+     * Ask for an object to be taken out of the game when the buffer is
+     * next applied. Asking again before then does nothing.
+     *
+     * @param gameObject The object to remove
+     */
+    public void despawn(GameObject gameObject) {
+        if (gameObject == null) {
+            return;
+        }
+        if (gameObject.isDespawnPending()) {
+            duplicates++;
+            return;
+        }
+        gameObject.setDespawnPending(true);
+        despawns.add(gameObject);
+    }
+
+    /**
+     * Check if there is anything waiting to be applied
+     *
+     * @return True if no objects are waiting to join or leave
+     */
+    public boolean isEmpty() {
+        return spawns.isEmpty() && despawns.isEmpty();
+    }
+
+    /**
+     * Make the changes asked for since the buffer was last applied.
+     * Objects that leave are taken out of the entity store and given
+     * back to their pools. An object that was spawned and removed
+     * before the buffer was applied never joins the game.
+     *
+     * @param gameObjects The list of objects in the game
+     */
+    public void apply(List<GameObject> gameObjects) {
+        if (!despawns.isEmpty()) {
+            // close up the gaps left by leaving objects in one pass
+            int kept = 0;
+            for (int i = 0; i < gameObjects.size(); i++) {
+                GameObject gameObject = gameObjects.get(i);
+                if (!gameObject.isDespawnPending()) {
+                    gameObjects.set(kept++, gameObject);
+                }
+            }
+            for (int i = gameObjects.size() - 1; i >= kept; i--) {
+                gameObjects.remove(i);
+            }
+        }
+
+        for (int i = 0; i < spawns.size(); i++) {
+            GameObject gameObject = spawns.get(i);
+            if (!gameObject.isDespawnPending()) {
+                gameObjects.add(gameObject);
+            }
+        }
+        spawns.clear();
+
+        for (int i = 0; i < despawns.size(); i++) {
+            GameObject gameObject = despawns.get(i);
+            gameObject.setDespawnPending(false);
+            if (gameObject.isAttached()) {
+                gameObject.detach();
+                gameObject.recycle();
+            }
+        }
+        despawns.clear();
+    }
+
+    /**
+     * Throw away everything waiting to be applied, e.g. when the game
+     * is reset
+     */
+    public void clear() {
+        for (int i = 0; i < despawns.size(); i++) {
+            despawns.get(i).setDespawnPending(false);
+        }
+        despawns.clear();
+        spawns.clear();
+    }
+
+    /**
+     * Get the number of removals ignored because the object was already
+     * leaving the game
+     *
+     * @return The number of duplicate removals
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,299 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of every entity in the game, kept in parallel arrays of
+ * primitives rather than spread over the game objects. Each entity is a
+ * row (its index) across the arrays; game objects are views onto their
+ * row. Work done on every entity each step (moving, ageing, noting
+ * positions for interpolation) is done here in plain loops down the
+ * arrays, with no pointer chasing or virtual calls.
+ * <p>
+ * Removing an entity moves the last row into its place, so the rows in
+ * use are always 0 to getCount()-1 and loops never skip gaps. The game
+ * object whose row moved is told its new index.
+ * <p>
+ * Pooled entities waiting to be reused keep their last state in a
+ * second shared store, see getDetached().
+ * <p>
+ * [singleton]
+ */
+public class EntityStore {
+    /** The width of the world, which wraps round */
+    static final int WORLD_WIDTH = 800;
+    /** The height of the world, which wraps round */
+    static final int WORLD_HEIGHT = 600;
+    /** The kinds of entity by ordinal, kept as values() copies the array every call */
+    private static final EntityType[] TYPES = EntityType.values();
+    /** The single instance of this class */
+    private static EntityStore single = new EntityStore(256);
+    /** The store pooled entities keep their rows in while out of the game */
+    private static EntityStore detached = new EntityStore(64);
+
+    /**
+     * Get the single instance of this class
+     *
+     * @return The single instance of this class
+     */
+    public static EntityStore get() {
+        return single;
+    }
+
+    /**
+     * Get the store pooled entities keep their rows in once they leave
+     * the game, until they are reused or dropped by their pool. It is
+     * never moved.
+     *
+     * @return The store of detached pooled entities
+     */
+    static EntityStore getDetached() {
+        return detached;
+    }
+
+    /** The x location of each entity */
+    double[] x;
+    /** The y location of each entity */
+    double[] y;
+    /** The horizontal speed of each entity (pixels/sec) */
+    double[] dx;
+    /** The vertical speed of each entity (pixels/sec) */
+    double[] dy;
+    /** The angle of each entity (degrees) */
+    int[] angle;
+    /** The x location of each entity at the start of the last step, NaN before the first */
+    double[] previousX;
+    /** The y location of each entity at the start of the last step */
+    double[] previousY;
+    /** The angle of each entity at the start of the last step */
+    int[] previousAngle;
+    /** The kind of each entity, as the ordinal of its EntityType */
+    byte[] type;
+    /** The time each entity has moved for (ms) */
+    int[] age;
+    /** The time each entity lives for (ms), 0 for ever */
+    int[] lifetime;
+    /** The game object viewing each row */
+    private GameObject[] views;
+    /** The number of rows in use */
+    private int count;
+    /** The number of entities of each type */
+    private int[] typeCounts = new int[TYPES.length];
+    /** The entities that outlived their lifetime in the last step */
+    private ArrayList<GameObject> expired = new ArrayList<GameObject>();
+
+    /**
+     * Create a store. Only the shared store returned by get() is moved
+     * by the game; others hold entities that have left it.
+     *
+     * @param capacity The number of rows to start with
+     */
+    EntityStore(int capacity) {
+        grow(capacity);
+    }
+
+    /**
+     * Add a row for a game object
+     *
+     * @param view The game object the row belongs to
+     * @param type The kind of entity
+     * @return The index of the new row
+     */
+    int add(GameObject view, EntityType type) {
+        if (count == views.length) {
+            grow(Math.max(1, count * 2));
+        }
+        int index = count++;
+        x[index] = 0;
+        y[index] = 0;
+        dx[index] = 0;
+        dy[index] = 0;
+        angle[index] = 0;
+        previousX[index] = Double.NaN;
+        previousY[index] = 0;
+        previousAngle[index] = 0;
+        this.type[index] = (byte) type.ordinal();
+        age[index] = 0;
+        lifetime[index] = 0;
+        views[index] = view;
+        typeCounts[type.ordinal()]++;
+        return index;
+    }
+
+    /**
+     * Remove a row, moving the last row into its place
+     *
+     * @param index The index of the row to remove
+     */
+    void remove(int index) {
+        typeCounts[type[index]]--;
+        int last = --count;
+        if (index != last) {
+            x[index] = x[last];
+            y[index] = y[last];
+            dx[index] = dx[last];
+            dy[index] = dy[last];
+            angle[index] = angle[last];
+            previousX[index] = previousX[last];
+            previousY[index] = previousY[last];
+            previousAngle[index] = previousAngle[last];
+            type[index] = type[last];
+            age[index] = age[last];
+            lifetime[index] = lifetime[last];
+            views[index] = views[last];
+            views[index].moveTo(index);
+        }
+        views[last] = null;
+    }
+
+    /**
+     * Remove every entity, detaching their game objects and giving the
+     * pooled ones back to their pools
+     */
+    public void clear() {
+        while (count > 0) {
+            GameObject view = views[count - 1];
+            view.detach();
+            view.recycle();
+        }
+    }
+
+    /**
+     * Add a row copied from another store
+     *
+     * @param from The store to copy the row from
+     * @param fromIndex The index of the row in that store
+     * @param view The game object the row belongs to
+     * @return The index of the new row
+     */
+    int copy(EntityStore from, int fromIndex, GameObject view) {
+        int index = add(view, TYPES[from.type[fromIndex]]);
+        x[index] = from.x[fromIndex];
+        y[index] = from.y[fromIndex];
+        dx[index] = from.dx[fromIndex];
+        dy[index] = from.dy[fromIndex];
+        angle[index] = from.angle[fromIndex];
+        previousX[index] = from.previousX[fromIndex];
+        previousY[index] = from.previousY[fromIndex];
+        previousAngle[index] = from.previousAngle[fromIndex];
+        age[index] = from.age[fromIndex];
+        lifetime[index] = from.lifetime[fromIndex];
+        return index;
+    }
+
+    private void grow(int capacity) {
+        if (views == null) {
+            x = new double[capacity];
+            y = new double[capacity];
+            dx = new double[capacity];
+            dy = new double[capacity];
+            angle = new int[capacity];
+            previousX = new double[capacity];
+            previousY = new double[capacity];
+            previousAngle = new int[capacity];
+            type = new byte[capacity];
+            age = new int[capacity];
+            lifetime = new int[capacity];
+            views = new GameObject[capacity];
+            return;
+        }
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dy = Arrays.copyOf(dy, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        previousAngle = Arrays.copyOf(previousAngle, capacity);
+        type = Arrays.copyOf(type, capacity);
+        age = Arrays.copyOf(age, capacity);
+        lifetime = Arrays.copyOf(lifetime, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    /**
+     * Note where every entity is at the start of a step, so it can be
+     * drawn part of the way between there and where it ends up
+     */
+    public void savePositions() {
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+        System.arraycopy(angle, 0, previousAngle, 0, count);
+    }
+
+    /**
+     * Move every entity by its speed, wrapping round the edges of the
+     * screen, and age it by the time passed
+     *
+     * @param delta The time that has passed in milliseconds
+     */
+    public void integrate(long delta) {
+        double seconds = delta / 1000.0;
+        for (int i = 0; i < count; i++) {
+            x[i] = wrap(x[i] + dx[i] * seconds, WORLD_WIDTH);
+            y[i] = wrap(y[i] + dy[i] * seconds, WORLD_HEIGHT);
+        }
+
+        expired.clear();
+        for (int i = 0; i < count; i++) {
+            age[i] += delta;
+            if (age[i] > lifetime[i] && lifetime[i] > 0) {
+                expired.add(views[i]);
+            }
+        }
+    }
+
+    /**
+     * Wrap a coordinate that has gone off one side of the screen round
+     * to the other. The distance gone past the edge is carried over, so
+     * how far an entity travels doesn't depend on how long the steps are.
+     */
+    static double wrap(double value, int size) {
+        if (value < 0) {
+            return value + size;
+        }
+        if (value > size) {
+            return value - size;
+        }
+        return value;
+    }
+
+    /**
+     * Get the entities that outlived their lifetime in the last step
+     *
+     * @return The expired game objects, valid until the next step
+     */
+    public List<GameObject> getExpired() {
+        return expired;
+    }
+
+    /**
+     * Check if any entity that needs game logic run each step exists
+     *
+     * @return True if game logic should run this step
+     */
+    public boolean requestsLogic() {
+        for (EntityType type : TYPES) {
+            if (type.requestsLogic() && typeCounts[type.ordinal()] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of entities of a given kind
+     *
+     * @param type The kind of entity
+     * @return The number of entities of that kind
+     */
+    public int getCount(EntityType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
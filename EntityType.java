@@ -0,0 +1,42 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * The kinds of entity in the game, as recorded in the entity store
+ */
+public enum EntityType {
+    /** A player's ship */
+    SHIP(false),
+    /** An asteroid, big or small */
+    ASTEROID(true),
+    /** A shot fired by a player or an alien */
+    SHOT(false),
+    /** A flying saucer */
+    ALIEN_SHIP(true),
+    /** A rogue ship */
+    ROGUE_SHIP(true),
+    /** An alien */
+    ALIEN(false),
+    /** A gravity well */
+    GRAVITY(true);
+
+    /** True if game logic must run each step while one of these exists */
+    private final boolean requestsLogic;
+
+    private EntityType(boolean requestsLogic) {
+        this.requestsLogic = requestsLogic;
+    }
+
+    public boolean requestsLogic() {
+        return requestsLogic;
+    }
+
+    /**
+     * Get the collision layer of this kind of entity, a bit of its own
+     * that collision masks are made up of
+     *
+     * @return The layer bit
+     */
+    public int getLayer() {
+        return 1 << ordinal();
+    }
+}
@@ -0,0 +1,95 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * Keeps the game loop to a steady frame rate. At the end of each frame
+ * the pacer waits until the next frame is due: it sleeps for most of the
+ * wait, since sleeps are only accurate to a millisecond or so (worse on
+ * some versions of Windows), then spins for the last part of it.
+ * <p>
+ * A frame that runs so long the next one is already overdue is counted
+ * as skipping frames, and the schedule restarts from then rather than
+ * rushing to catch up. The time each frame took is recorded in a
+ * histogram.
+ */
+public class FramePacer {
+    /** How close to the deadline we stop sleeping and spin instead (ns) */
+    private static final long SPIN_NANOS = Long.getLong("asteroids.pacer.spin", 1000000);
+
+    /** The time between frames (ns) */
+    private long period;
+    /** The time (from System.nanoTime()) the next frame is due, or 0 before the first */
+    private long nextFrame;
+    /** The time the current frame started */
+    private long frameStart;
+    /** The number of frames missed because a frame ran too long */
+    private long skippedFrames;
+    /** The times the frames took */
+    private FrameTimeHistogram histogram = new FrameTimeHistogram();
+
+    /**
+     * Create a pacer for a frame rate
+     *
+     * @param rate The number of frames a second
+     */
+    public FramePacer(int rate) {
+        setTargetRate(rate);
+    }
+
+    /**
+     * Set the frame rate to keep to
+     *
+     * @param rate The number of frames a second
+     */
+    public void setTargetRate(int rate) {
+        period = 1000000000L / Math.max(1, rate);
+    }
+
+    /**
+     * Wait until the next frame is due. Called once at the end of each
+     * frame.
+     */
+    public void sync() {
+        long now = System.nanoTime();
+        if (nextFrame == 0) {
+            nextFrame = now + period;
+            frameStart = now;
+            return;
+        }
+
+        // if we've already missed the next frame, count what we missed
+        // and carry on from now
+        if (now - nextFrame >= period) {
+            skippedFrames += (now - nextFrame) / period;
+            nextFrame = now;
+        }
+
+        // sleep while there is plenty of time left, then spin
+        long remaining = nextFrame - now;
+        while (remaining > SPIN_NANOS) {
+            long sleep = remaining - SPIN_NANOS;
+            try {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            remaining = nextFrame - System.nanoTime();
+        }
+        while (nextFrame - System.nanoTime() > 0) {
+            Thread.yield();
+        }
+
+        now = System.nanoTime();
+        histogram.record(now - frameStart);
+        frameStart = now;
+        nextFrame += period;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public FrameTimeHistogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,93 @@
+package org.newdawn.spaceinvaders;
+
+import java.io.PrintStream;
+
+/**
+ * A count of frame times in buckets of 10 microseconds, from which the
+ * median, 99th percentile and worst frame can be read. Frames longer
+ * than the last bucket are counted in it, but the longest frame is
+ * always kept exactly.
+ */
+public class FrameTimeHistogram {
+    /** The width of each bucket (ns) */
+    private static final long BUCKET_NANOS = 10000;
+    /** The number of buckets, covering 0 to 250ms */
+    private static final int BUCKETS = 25000;
+
+    /** The number of frames in each bucket */
+    private int[] counts = new int[BUCKETS];
+    /** The number of frames recorded */
+    private long frames;
+    /** The total time of the frames recorded (ns) */
+    private long total;
+    /** The longest frame recorded (ns) */
+    private long max;
+
+    /**
+     * Record the time a frame took
+     *
+     * @param nanos The frame time in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        counts[(int) Math.min(BUCKETS - 1, Math.max(0, nanos / BUCKET_NANOS))]++;
+        frames++;
+        total += nanos;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    /**
+     * Get the frame time that a given fraction of frames were no longer than
+     *
+     * @param fraction The fraction of frames, e.g. 0.99
+     * @return The frame time in nanoseconds, to the nearest bucket
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (frames == 0) {
+            return 0;
+        }
+        long wanted = (long) Math.ceil(frames * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(max, (i + 1) * BUCKET_NANOS);
+            }
+        }
+        return max;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Empty the histogram
+     */
+    public synchronized void clear() {
+        counts = new int[BUCKETS];
+        frames = 0;
+        total = 0;
+        max = 0;
+    }
+
+    /**
+     * Write a summary of the frame times out
+     *
+     * @param out The stream to write the summary to
+     */
+    public synchronized void dump(PrintStream out) {
+        out.println("frame times: " + frames + " frames, mean " + millis(frames == 0 ? 0 : total / frames)
+                + "ms, p50 " + millis(getPercentile(0.5)) + "ms, p99 " + millis(getPercentile(0.99))
+                + "ms, max " + millis(max) + "ms");
+    }
+
+    private static String millis(long nanos) {
+        return String.valueOf(Math.round(nanos / 10000.0) / 100.0);
+    }
+}
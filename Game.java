@@ -5,11 +5,11 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -28,14 +28,46 @@ import javax.swing.*;
  * appropriate game actions.
  */
 public class Game extends Canvas {
-	/** The stragey that allows us to use accelerate page flipping */
-	private BufferStrategy strategy;
+	/** The surface frames are drawn to, a window or an offscreen image */
+	private RenderBackend renderer;
 	/** True if the game is currently "running", i.e. the game loop is looping */
 	private boolean gameRunning = true;
+	/** The length of each simulation step (ms), from the rate in Hz (100 by default) */
+	private long simulationStep = Math.max(1, Math.round(1000.0 / Integer.getInteger("asteroids.sim.rate", 100)));
+	/** The step length (ms) the amounts applied each step were tuned at, 100 steps a second */
+	static final double TUNED_STEP = 10;
+	/** The time between thruster sounds while thrusting (ms) */
+	private static final int THRUST_SOUND_INTERVAL = 250;
+	/** The most simulation steps run in one loop while catching up */
+	private int maxSimulationSteps = Integer.getInteger("asteroids.sim.maxsteps", 5);
+	/** Keeps the game loop to the target frame rate (60 fps by default) */
+	private FramePacer pacer = new FramePacer(Integer.getInteger("asteroids.fps", 60));
+	/** Lowers rendering quality when frames run over budget, or null to always draw at full quality */
+	private QualityGovernor governor = "false".equals(System.getProperty("asteroids.quality.adaptive")) ? null
+			: new QualityGovernor(Long.getLong("asteroids.quality.budget",
+					1000 / Integer.getInteger("asteroids.fps", 60)) * 1000000L);
+	/** The rendering quality level in use, 0 being full quality */
+	private volatile int qualityLevel;
+	/** The quality level to change to at the start of the next frame drawn, or -1 to stay as we are */
+	private AtomicInteger requestedQualityLevel = new AtomicInteger(-1);
+	/** True if screens shown over the game are drawn opaque, hiding the game beneath */
+	private volatile boolean opaqueOverlays;
+	/** The angle between rotated frames at full quality */
+	private int fullQualityStep = RotatedSpriteCache.get().getStep();
+	/** The number of steps given up on because the simulation fell too far behind */
+	private long droppedSteps;
+	/** How far (0 to 1) through the next simulation step frames are drawn at */
+	private float interpolation;
 	/** The list of all the gameObjects that exist in our game */
-	private ArrayList gameObjects = new ArrayList();
-	/** The list of gameObjects that need to be removed from the game this loop */
-	private ArrayList removeList = new ArrayList();
+	private ArrayList<GameObject> gameObjects = new ArrayList<GameObject>();
+	/** The gameObjects joining and leaving the game this step, applied between loops over the list */
+	private EntityCommandBuffer commands = new EntityCommandBuffer();
+	/** Finds the pairs of gameObjects that might be touching, or null to test every pair */
+	private CollisionBroadphase broadphase = createBroadphase(System.getProperty("asteroids.collision.broadphase", "grid"));
+	/** The pairs found by the broadphase each step */
+	private CollisionPairs collisionPairs = new CollisionPairs();
+	/** Which kinds of gameObject collide, and what happens when they do */
+	private CollisionMatrix collisionMatrix = createCollisionMatrix();
 	/** The entity representing the player 1 */
 	private GameObject p1Ship;
     /** The entity representing the player 2 */
@@ -65,7 +97,7 @@ public class Game extends Canvas {
     private int p2ScoreCount;
     private int p2ShotCount;
     private int currentLevel = 1;
-    private AePlayWave aulink;
+    private MusicStream music;
     private boolean diedOnce = false;
     private boolean p2_PlayedDeathOnce = false;
     private boolean gravitationEnabled = true;
@@ -73,12 +105,12 @@ public class Game extends Canvas {
     private boolean player2 = false;
     private boolean friendlyFireOn = false;
     private int deathCounter = 0;
-    // Delay counter for bg tones
-    private int toneCount = 0;
-    // Delay counter for p1 thruster tone
-    private int p1ThrusterSFX = 0;
-    // Delay counter for p2 thruster tone
-    private int p2ThrusterSFX = 0;
+    // Time since the last low bg tone (ms)
+    private long toneCount = 0;
+    // Time until the next p1 thruster tone (ms)
+    private long p1ThrusterSFX = 0;
+    // Time until the next p2 thruster tone (ms)
+    private long p2ThrusterSFX = 0;
 
     // TODO: Implement settings page
     private JCheckBox chk_gravityObject = new JCheckBox("Gravity Object Exists");
@@ -143,13 +175,91 @@ public class Game extends Canvas {
     private boolean p2_downPressed = false;
     /** True if we are firing */
     private boolean p2_firePressed = false;
+	/** True if a key press has asked for a fresh game, started at the beginning of the next step */
+	private volatile boolean startGameRequested = false;
+	/** True if a key press has asked for the next level, started at the beginning of the next step */
+	private volatile boolean newLevelRequested = false;
 	/** True if game logic needs to be applied this loop, normally as a result of a game event */
 	private boolean logicRequiredThisLoop = false;
+    /** The game logo shown on the title screen */
+    private BufferedImage logo;
+    /** The scores, level and lives along the top of the screen */
+    private OverlayLayer hudLayer = new HudLayer();
+    /** The title screen with the logo, high scores and menu */
+    private OverlayLayer titleLayer = new TitleLayer();
+    /** The level complete and pause message */
+    private OverlayLayer messageLayer = new MessageLayer();
+    /** The draws of the current frame, sorted and batched before drawing */
+    private RenderQueue renderQueue = new RenderQueue();
+    /** The snapshot frames are drawn from when drawing on this thread */
+    private WorldSnapshot frameSnapshot = new WorldSnapshot();
+    /** The snapshots handed to the render thread, or null if there isn't one */
+    private TripleBuffer<WorldSnapshot> snapshots;
+    /** The thread drawing frames alongside the simulation, or null to draw on this thread */
+    private RenderThread renderThread;
+    /** The number of frames the render thread had shown when the governor last heard of one */
+    private long renderedFrames;
+    /** The renderer repainting only what changed, or null to redraw every frame in full */
+    private DirtyRectRenderer dirtyRenderer = Boolean.getBoolean("asteroids.render.dirty")
+            ? new DirtyRectRenderer(800, 600) : null;
 	
 	/**
 	 * Construct our game and set it running.
 	 */
 	public Game() {
+		this(null);
+	}
+
+	/**
+	 * Construct our game, drawing to the given backend rather than a
+	 * window. Used to run the game offscreen, e.g. for benchmarking.
+	 *
+	 * @param backend The surface to draw frames to, or null to open
+	 * a window and draw to that
+	 */
+	Game(RenderBackend backend) {
+		renderer = backend;
+		if (renderer == null) {
+			openWindow();
+		}
+
+        // load the logo and high scores once, rather than every frame
+        // the title screen is shown
+        try {
+            InputStream in = getClass().getResourceAsStream("images\\logo.png");
+            logo = ImageIO.read(in != null ? in : new FileInputStream("images/logo.png"));
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        loadHighScores();
+
+        // decode all the sprites up front so creating game objects never
+        // touches the disk
+        SpriteStore.get().preload(SpriteStore.MANIFEST);
+
+        // decode all the sound effects up front so playing them never
+        // touches the disk
+        SoundClipCache.get().preload("sounds");
+        SoundClipCache.get().printReport(System.out);
+
+        // TODO: reenable
+        // Play music
+        music = MusicStream.open("sounds\\startmusic.wav", MusicStream.DEFAULT_BUFFER_BYTES);
+        if (music != null) {
+            music.setGain(SoundMixer.QUIET);
+            music.setLooping(true);
+            music.play();
+        }
+
+		// initialise the gameObjects in our game so there's something
+		// to see at startup
+		initGameObjects();
+	}
+	
+	/**
+	 * Open a window to show the game in and draw frames to it
+	 */
+	private void openWindow() {
 		// create a frame to contain our game
 		JFrame container = new JFrame("Asteroids");
 		
@@ -175,7 +285,7 @@ public class Game extends Canvas {
 		// create the buffering strategy which will allow AWT
 		// to manage our accelerated graphics
 		createBufferStrategy(2);
-		strategy = getBufferStrategy();
+		renderer = new BufferStrategyRenderBackend(getBufferStrategy());
 
         // add a key input system (defined below) to our canvas
         // so we can respond to key pressed
@@ -191,24 +301,17 @@ public class Game extends Canvas {
                 System.exit(0);
             }
         });
-
-        // TODO: reenable
-        // Play music
-        aulink = new AePlayWave("sounds\\startmusic.wav", 1);
-        aulink.start();
-
-		// initialise the gameObjects in our game so there's something
-		// to see at startup
-		initGameObjects();
 	}
-	
+
 	/**
 	 * Start a fresh game, this should clear out any old data and
 	 * create a new set.
 	 */
 	private void startGame() {
 		// clear out any existing gameObjects and initialise a new set
+		commands.clear();
 		gameObjects.clear();
+		EntityStore.get().clear();
 
 		// blank out any keyboard settings we might currently have
 		p1_leftPressed = false;
@@ -247,7 +350,9 @@ public class Game extends Canvas {
      */
     private void startNewLevel() {
         // clear out any existing gameObjects and initialise a new set
+        commands.clear();
         gameObjects.clear();
+        EntityStore.get().clear();
         initGameObjects();
 
         // blank out any keyboard settings we might currently have
@@ -305,7 +410,7 @@ public class Game extends Canvas {
                 int randomX1 = nextIntInRange(0, 300);
                 int randomY1 = nextIntInRange(0, 600);
 
-                GameObject asteroid = new AsteroidGameObject(this,"sprites\\Asteroid1.png", randomX1, randomY1, (int)(Math.random()*360), true, currentLevel);
+                GameObject asteroid = AsteroidGameObject.create(this,"sprites\\Asteroid1.png", randomX1, randomY1, (int)(Math.random()*360), true, currentLevel);
                 gameObjects.add(asteroid);
                 asteroidCount++;
             }
@@ -314,7 +419,7 @@ public class Game extends Canvas {
             if (asteroidCount < startingAsteroidCount) {
                 int randomX2 = nextIntInRange(500, 800);
                 int randomY2 = nextIntInRange(0, 600);
-                GameObject asteroid = new AsteroidGameObject(this,"sprites\\Asteroid1.png", randomX2, randomY2, (int)(Math.random()*360), true, currentLevel);
+                GameObject asteroid = AsteroidGameObject.create(this,"sprites\\Asteroid1.png", randomX2, randomY2, (int)(Math.random()*360), true, currentLevel);
                 gameObjects.add(asteroid);
                 asteroidCount ++;
             }
@@ -374,36 +479,57 @@ public class Game extends Canvas {
 	
 	/**
 	 * Remove an gameObject from the game. The gameObject removed will
-	 * no longer move or be drawn.
+	 * no longer move or be drawn. The removal happens once the current
+	 * pass over the gameObjects is done; removing the same gameObject
+	 * twice in a step does nothing the second time.
 	 * 
 	 * @param gameObject The gameObject that should be removed
 	 */
     // TODO: rename this
 	public void removeEntity(GameObject gameObject) {
-		removeList.add(gameObject);
+		commands.despawn(gameObject);
+	}
+
+	/**
+	 * Add a gameObject to the game. Like removal, the gameObject joins
+	 * once the current pass over the gameObjects is done.
+	 * 
+	 * @param gameObject The gameObject that should be added
+	 */
+	public void addEntity(GameObject gameObject) {
+		commands.spawn(gameObject);
 	}
 
     /**
-     * Ensures instant removal of entity not based on timer
+     * Apply the additions and removals asked for so far this step
      */
-    public void refreshRemoval() {
-        gameObjects.removeAll(removeList);
-        removeList.clear();
+    private void applyCommands() {
+        commands.apply(gameObjects);
     }
 
     public void bigAsteroidDestroyed(GameObject gameObject) {
         for (int i = 0; i < 3; i++) {
-            GameObject smallAsteroid = new AsteroidGameObject(this,"sprites\\SmallAsteroid1.png", gameObject.getX(), gameObject.getY(), (int)(Math.random()*360), false, currentLevel);
-            gameObjects.add(smallAsteroid);
-            asteroidCount++;
+            GameObject smallAsteroid = AsteroidGameObject.create(this,"sprites\\SmallAsteroid1.png", gameObject.getX(), gameObject.getY(), (int)(Math.random()*360), false, currentLevel);
+            addAsteroid(smallAsteroid);
         }
     }
 
+    /**
+     * Add an asteroid to the game, counting it among those that must be
+     * destroyed to finish the level
+     *
+     * @param asteroid The asteroid to add
+     */
+    void addAsteroid(GameObject asteroid) {
+        addEntity(asteroid);
+        asteroidCount++;
+    }
+
     /**
      * Notification that player 1 has died.
      */
     public void notifyDeath(String whichPlayer) {
-        new AePlayWave("sounds\\EXPLODE1.wav").start();
+        SoundMixer.get().trigger("sounds\\EXPLODE1.wav", SoundCategory.EXPLOSION, 1, 0);
 
         if (whichPlayer.equals("p1")) {
             this.removeEntity(getP1Ship());
@@ -411,7 +537,7 @@ public class Game extends Canvas {
             if (livesCount1 > 0) {
                 livesCount1--;
                 p1Ship = new ShipGameObject(this,"sprites\\ShipNormal.png",375,175, "p1");
-                gameObjects.add(p1Ship);
+                addEntity(p1Ship);
                 p1_leftPressed = false;
                 p1_rightPressed = false;
                 p1_firePressed = false;
@@ -427,7 +553,7 @@ public class Game extends Canvas {
             if (livesCount2 > 0) {
                 livesCount2--;
                 p2Ship = new ShipGameObject(this,"sprites\\ShipNormal2.png",375,375, "p2");
-                gameObjects.add(p2Ship);
+                addEntity(p2Ship);
                 //diedOnce = true;
                 p2_leftPressed = false;
                 p2_rightPressed = false;
@@ -447,7 +573,7 @@ public class Game extends Canvas {
 //    public void p2_notifyDeath() {
 //        if (!p2_PlayedDeathOnce)
 //        {
-//            new AePlayWave("sounds\\EXPLODE1.wav").start();
+//            SoundMixer.get().play("sounds\\EXPLODE1.wav", SoundCategory.EXPLOSION, 1, 0);
 //            p2_PlayedDeathOnce = true;
 //            p2_leftPressed = false;
 //            p2_rightPressed = false;
@@ -483,7 +609,7 @@ public class Game extends Canvas {
 //        //gameRunning = false;
 //        if (!diedOnce)
 //        {
-//            new AePlayWave("sounds\\EXPLODE1.wav").start();
+//            SoundMixer.get().play("sounds\\EXPLODE1.wav", SoundCategory.EXPLOSION, 1, 0);
 //            diedOnce = true;
 //            p1_leftPressed = false;
 //            p1_rightPressed = false;
@@ -493,7 +619,7 @@ public class Game extends Canvas {
 //
 //        if (!p2_PlayedDeathOnce)
 //        {
-//            new AePlayWave("sounds\\EXPLODE1.wav").start();
+//            SoundMixer.get().play("sounds\\EXPLODE1.wav", SoundCategory.EXPLOSION, 1, 0);
 //            p2_PlayedDeathOnce = true;
 //            p2_leftPressed = false;
 //            p2_rightPressed = false;
@@ -591,7 +717,7 @@ public class Game extends Canvas {
 	 */
 	public void notifyWin() {
         // TODO: when you win and also kill yourself
-        new AePlayWave("sounds\\levelup.wav").start();
+        SoundMixer.get().trigger("sounds\\levelup.wav", SoundCategory.EVENT, 1, 0);
 		message = "Level Complete!";
         currentLevel++;
         // TODO
@@ -652,9 +778,9 @@ public class Game extends Canvas {
 		
 		// if we waited long enough, create the shot entity, and record the time.
 		p2_lastFire = System.currentTimeMillis();
-		ShotGameObject shot = new ShotGameObject(this,"sprites\\Bullet2.png", p2Ship.getX()+ p2Ship.getWidth()/2-3, p2Ship.getY()+ p2Ship.getHeight()/2-3, p2Ship.getAngle(), p2_moveSpeedX +100, p2_moveSpeedY +100, "p2");
-        new AePlayWave("sounds\\asteroids_shoot.wav").start();
-		gameObjects.add(shot);
+		ShotGameObject shot = ShotGameObject.create(this,"sprites\\Bullet2.png", p2Ship.getX()+ p2Ship.getWidth()/2-3, p2Ship.getY()+ p2Ship.getHeight()/2-3, p2Ship.getAngle(), p2_moveSpeedX +100, p2_moveSpeedY +100, "p2");
+        SoundMixer.get().trigger("sounds\\asteroids_shoot.wav", SoundCategory.WEAPON, 1, 0);
+		addEntity(shot);
 	}
 
     /**
@@ -677,9 +803,9 @@ public class Game extends Canvas {
 
         // if we waited long enough, create the shot entity, and record the time.
         p1_lastFire = System.currentTimeMillis();
-        ShotGameObject shot = new ShotGameObject(this,"sprites\\Bullet.png", p1Ship.getX()+ p1Ship.getWidth()/2-3, p1Ship.getY()+ p1Ship.getHeight()/2-3, p1_currentAngle, p1_moveSpeedX +100, p1_moveSpeedY +100, "p1");
-        new AePlayWave("sounds\\asteroids_shoot.wav").start();
-        gameObjects.add(shot);
+        ShotGameObject shot = ShotGameObject.create(this,"sprites\\Bullet.png", p1Ship.getX()+ p1Ship.getWidth()/2-3, p1Ship.getY()+ p1Ship.getHeight()/2-3, p1_currentAngle, p1_moveSpeedX +100, p1_moveSpeedY +100, "p1");
+        SoundMixer.get().trigger("sounds\\asteroids_shoot.wav", SoundCategory.WEAPON, 1, 0);
+        addEntity(shot);
     }
 	
 	/**
@@ -694,308 +820,560 @@ public class Game extends Canvas {
 	 * <p>
 	 */
 	public void gameLoop() {
-		long lastLoopTime = System.currentTimeMillis();
+		long lastLoopTime = System.nanoTime();
+		long accumulator = 0;
+
+		// report how steady the frame rate was when the game exits
+		if (!"false".equals(System.getProperty("asteroids.frametimes"))) {
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				public void run() {
+					pacer.getHistogram().dump(System.out);
+					System.out.println("skipped frames: " + pacer.getSkippedFrames());
+					if (governor != null) {
+						System.out.println(governor.getStatistics());
+					}
+					ObjectPool.printReport(System.out);
+					System.out.println(collisionMatrix.getStatistics());
+				}
+			});
+		}
+
+		// draw on a thread of our own if we've been asked to
+		if (Boolean.getBoolean("asteroids.render.thread")) {
+			startRenderThread();
+		}
 		
 		// keep looping round til the game ends
 		while (gameRunning) {
-			// work out how long its been since the last update, this
-			// will be used to calculate how far the gameObjects should
-			// move this loop
-			long delta = System.currentTimeMillis() - lastLoopTime;
-			lastLoopTime = System.currentTimeMillis();
-			
-			// Get hold of a graphics context for the accelerated 
-			// surface and blank it out
-			Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
-            g.setRenderingHint(
-                    RenderingHints.KEY_ANTIALIASING,
-                    RenderingHints.VALUE_ANTIALIAS_ON);
-
-			g.setColor(Color.black);
-			g.fillRect(0,0,800,600);
+			// work out how long its been since the last loop, the
+			// simulation is advanced in fixed steps to use this time up
+			long now = System.nanoTime();
+			accumulator += now - lastLoopTime;
+			lastLoopTime = now;
+
+			// move everything, resolve collisions and respond to input,
+			// as many steps as are due. If we've fallen too far behind
+			// give up on catching up rather than spiral further back
+			long stepNanos = simulationStep * 1000000L;
+			int steps = 0;
+			while (accumulator >= stepNanos) {
+				if (steps == maxSimulationSteps) {
+					droppedSteps += accumulator / stepNanos;
+					accumulator %= stepNanos;
+					break;
+				}
+				updateWorld(simulationStep);
+				accumulator -= stepNanos;
+				steps++;
+			}
 
-            // draw the score in the top left and right corner
-            g.setColor(Color.white);
-            g.drawString(Integer.toString(p1ScoreCount),20,20);
-            g.drawString(Integer.toString(p2ScoreCount),760,20);
-            // draw level in center top
-            g.drawString(Integer.toString(currentLevel),398,20);
+			// draw the world part of the way between the last two steps,
+			// as far as we are through the next one
+			interpolation = (float) accumulator / stepNanos;
 
-            // draw lives on top
-            g.drawString("P1 Lives: " + Integer.toString(livesCount1), 100, 20);
-            g.drawString("P2 Lives: " + Integer.toString(livesCount2), 650, 20);
-			
-			// cycle round asking each entity to move itself
-			if (!waitingForPausePress && !waitingForStartPress && !waitingForLevelPress) {
-				for (int i=0;i< gameObjects.size();i++) {
-					GameObject gameObject = (GameObject) gameObjects.get(i);
-					
-					gameObject.move(delta);
+			// if frames are drawn on a thread of their own just hand the
+			// new state of the world over to it
+			if (renderThread != null) {
+				if (steps > 0) {
+					publishSnapshot();
 				}
-                // Randomly create an alien ship
-                if (Math.random()*100000 < 50) {
-                    GameObject alien = new AlienShipGameObject(this, "sprites\\AlienShip.png", (int)(Math.random()*600 + 100), (int)(Math.random()*400 + 100), (int)(Math.random()*360), currentLevel, 500);
-                    gameObjects.add(alien);
-                }
+			} else {
+				// Get hold of a graphics context for the surface we're
+				// rendering to and draw the frame
+				Graphics2D g = renderer.beginFrame();
+				drawFrame(g);
+
+				// finally, we've completed drawing so clear up the graphics
+				// and flip the buffer over
+				renderer.endFrame(g);
 			}
-			
-			// cycle round drawing all the gameObjects we have in the game
-			for (int i=0;i< gameObjects.size();i++) {
-				GameObject gameObject = (GameObject) gameObjects.get(i);
-				
-				gameObject.draw(g);
-			}
-			
-			// brute force collisions, compare every entity against
-			// every other entity. If any of them collide notify 
-			// both gameObjects that the collision has occured
-			for (int p=0;p< gameObjects.size();p++) {
-				for (int s=p+1;s< gameObjects.size();s++) {
-					GameObject me = (GameObject) gameObjects.get(p);
-					GameObject him = (GameObject) gameObjects.get(s);
-					
-					if (me.collidesWith(him)) {
-						me.collidedWith(him);
-						him.collidedWith(me);
-					}
+
+			// if the frame took too long (or has been quick for a while)
+			// change the quality we draw at. Frames drawn on the render
+			// thread are timed there, once for each frame it shows, and
+			// count as long as the simulation they overlap with
+			if (governor != null) {
+				long frameTime = System.nanoTime() - now;
+				boolean record = true;
+				if (renderThread != null) {
+					long shown = renderThread.getFrames();
+					record = shown != renderedFrames;
+					renderedFrames = shown;
+					frameTime = Math.max(frameTime, renderThread.getLastFrameTime());
+				}
+				if (record && governor.record(frameTime)) {
+					setQualityLevel(governor.getLevel());
 				}
 			}
 
-            if (gravitationEnabled) {
-                // Gravitational pull from center
-                int centerX = 400;
-                int centerY = 300;
-
-                // Player 1 gravitational pull
-                if (p1Ship != null) {
-                    if (p1Ship.getX()+ p1Ship.getWidth()/2 > centerX && p1Ship.getY()+ p1Ship.getHeight()/2 > centerY) {
-                        ((ShipGameObject) p1Ship).changeAccel(-gravitationalFactor,-gravitationalFactor);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 < centerX && p1Ship.getY()+ p1Ship.getHeight()/2 > centerY) {
-                        ((ShipGameObject) p1Ship).changeAccel(gravitationalFactor,-gravitationalFactor);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 == 0 && p1Ship.getY()+ p1Ship.getHeight()/2 > centerY) {
-                        ((ShipGameObject) p1Ship).changeAccel(0,-gravitationalFactor);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 == 0 && p1Ship.getY()+ p1Ship.getHeight()/2 < centerY) {
-                        ((ShipGameObject) p1Ship).changeAccel(0,gravitationalFactor);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 < centerX && p1Ship.getY()+ p1Ship.getHeight()/2 < centerY) {
-                        ((ShipGameObject) p1Ship).changeAccel(gravitationalFactor,gravitationalFactor);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 > centerX && p1Ship.getY()+ p1Ship.getHeight()/2 < centerY) {
-                        ((ShipGameObject) p1Ship).changeAccel(-gravitationalFactor,gravitationalFactor);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 > centerX && p1Ship.getY()+ p1Ship.getHeight()/2 == 0) {
-                        ((ShipGameObject) p1Ship).changeAccel(-gravitationalFactor,0);
-                    }
-                    else if (p1Ship.getX()+ p1Ship.getWidth()/2 < centerX && p1Ship.getY()+ p1Ship.getHeight()/2 == 0) {
-                        ((ShipGameObject) p1Ship).changeAccel(gravitationalFactor,0);
-                    }
-                }
+			// finally wait until the next frame is due
+			pacer.sync();
+		}
+	}
 
-                // Player 2 gravitational pull
-                // TODO: do this if statement for all player 2 operations
-                if (player2 && p2Ship != null) {
-                    if (p2Ship.getX()+ p2Ship.getWidth()/2 > centerX && p2Ship.getY()+ p2Ship.getHeight()/2 > centerY) {
-                        ((ShipGameObject) p2Ship).changeAccel(-gravitationalFactor,-gravitationalFactor);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 < centerX && p2Ship.getY()+ p2Ship.getHeight()/2 > centerY) {
-                        ((ShipGameObject) p2Ship).changeAccel(gravitationalFactor,-gravitationalFactor);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 == 0 && p2Ship.getY()+ p2Ship.getHeight()/2 > centerY) {
-                        ((ShipGameObject) p2Ship).changeAccel(0,-gravitationalFactor);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 == 0 && p2Ship.getY()+ p2Ship.getHeight()/2 < centerY) {
-                        ((ShipGameObject) p2Ship).changeAccel(0,gravitationalFactor);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 < centerX && p2Ship.getY()+ p2Ship.getHeight()/2 < centerY) {
-                        ((ShipGameObject) p2Ship).changeAccel(gravitationalFactor,gravitationalFactor);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 > centerX && p2Ship.getY()+ p2Ship.getHeight()/2 < centerY) {
-                        ((ShipGameObject) p2Ship).changeAccel(-gravitationalFactor,gravitationalFactor);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 > centerX && p2Ship.getY()+ p2Ship.getHeight()/2 == 0) {
-                        ((ShipGameObject) p2Ship).changeAccel(-gravitationalFactor,0);
-                    }
-                    else if (p2Ship.getX()+ p2Ship.getWidth()/2 < centerX && p2Ship.getY()+ p2Ship.getHeight()/2 == 0) {
-                        ((ShipGameObject) p2Ship).changeAccel(gravitationalFactor,0);
-                    }
-                }
-            }
-			// remove any entity that has been marked for clear up
-			gameObjects.removeAll(removeList);
-			removeList.clear();
-
-			// if a game event has indicated that game logic should
-			// be resolved, cycle round every entity requesting that
-			// their personal logic should be considered.
-			if (logicRequiredThisLoop) {
-				for (int i=0;i< gameObjects.size();i++) {
-					GameObject gameObject = (GameObject) gameObjects.get(i);
-					gameObject.doLogic();
-				}
-				
-				logicRequiredThisLoop = false;
+	/**
+	 * Find every pair of gameObjects that touch and tell both about it
+	 */
+	void checkCollisions() {
+		if (broadphase != null) {
+			// only test the pairs the broadphase says might be touching,
+			// in the same order as the loop below would
+			broadphase.findPairs(gameObjects, collisionPairs);
+			for (int i=0;i<collisionPairs.size();i++) {
+				collide((GameObject) gameObjects.get(collisionPairs.getFirst(i)),
+						(GameObject) gameObjects.get(collisionPairs.getSecond(i)));
 			}
-			
-			// if we're waiting for an "any key" press then draw the 
-			// current message
-            if (waitingForStartPress) {
-                // Overlay transparent bg onto game area
-                g.setColor(new Color(0f, 0f, 0f, .75f));
-                g.fillRect(0,0,800,600);
-
-                // Draw the logo
-                BufferedImage logo = null;
-                try {
-                    logo = ImageIO.read(getClass().getResourceAsStream("images\\logo.png"));
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                };
-                g.drawImage(logo, (800 - logo.getWidth()) / 2, 20, null);
-
-                //frame.add(new ImagePanel());
+			collisionMatrix.endStep();
+			return;
+		}
+		
+		// brute force collisions, compare every entity against
+		// every other entity
+		for (int p=0;p< gameObjects.size();p++) {
+			for (int s=p+1;s< gameObjects.size();s++) {
+				collide((GameObject) gameObjects.get(p), (GameObject) gameObjects.get(s));
+			}
+		}
+		collisionMatrix.endStep();
+	}
 
-                g.setColor(Color.white);
-                g.drawString(message,(800-g.getFontMetrics().stringWidth(message))/2,250);
+	/**
+	 * Test a pair of gameObjects, and if they collide hand them to the
+	 * collision handler for their two types
+	 */
+	private void collide(GameObject me, GameObject him) {
+		// gameObjects already on their way out can't hit anything else
+		if (me.isDespawnPending() || him.isDespawnPending()) {
+			return;
+		}
+		
+		// pairs of types that never interact aren't worth a bounds test
+		if (!collisionMatrix.accept(me, him)) {
+			return;
+		}
+		
+		if (me.collidesWith(him)) {
+			collisionMatrix.dispatch(me, him);
+		}
+	}
 
+	/**
+	 * Advance the game by one loop: move the gameObjects, resolve
+	 * collisions, run any game logic and respond to the keys held down.
+	 *
+	 * @param delta The time that has passed since the last loop (ms)
+	 */
+	void updateWorld(long delta) {
+		// start anything asked for from the keyboard since the last
+		// step, now that nothing is going through the gameObjects
+		applyRequests();
+
+		// move every entity in one pass over the entity store, noting
+		// where it was so frames can be drawn between this step and the
+		// last. Shots that have run their course are removed
+		if (!waitingForPausePress && !waitingForStartPress && !waitingForLevelPress) {
+			EntityStore entities = EntityStore.get();
+			entities.savePositions();
+			entities.integrate(delta);
+			for (int i=0;i<entities.getExpired().size();i++) {
+				removeEntity(entities.getExpired().get(i));
+			}
+			if (entities.requestsLogic()) {
+				updateLogic();
+			}
+            // Randomly create an alien ship
+            if (Math.random()*100000 < 50 * delta / TUNED_STEP) {
+                GameObject alien = AlienShipGameObject.create(this, "sprites\\AlienShip.png", (int)(Math.random()*600 + 100), (int)(Math.random()*400 + 100), (int)(Math.random()*360), currentLevel, 5000);
+                addEntity(alien);
+            }
+		}
+		
+		checkCollisions();
 
-                if (waitingForNewHighScore) {
-                    g.drawString("New High Scores!", (800-g.getFontMetrics().stringWidth("New High Scores!"))/2, 260);
-                    g.drawString("Name: " + newHighScoreName, (800-g.getFontMetrics().stringWidth("Name: " + newHighScoreName))/2, 280);
-                } else {
-                    // draw highscore string
-                    loadHighScores();
-                    int i;
-                    g.drawString("Rank", 20, 230);
-                    for (i = 0; i < highScoresCount; i++) {
-                        g.drawString(Integer.toString(i + 1) + ". " + highScores[i], 20, 250 + i * 20);
-                    }
+        if (gravitationEnabled) {
+            // Gravitational pull from center
+            int centerX = 400;
+            int centerY = 300;
+            // the pull is applied each step, so it grows with the step
+            double pull = gravitationalFactor * delta / TUNED_STEP;
+
+            // Player 1 gravitational pull
+            if (p1Ship != null) {
+                if (p1Ship.getX()+ p1Ship.getWidth()/2 > centerX && p1Ship.getY()+ p1Ship.getHeight()/2 > centerY) {
+                    ((ShipGameObject) p1Ship).changeAccel(-pull,-pull);
                 }
-
-                if (waitingForOptionChange) {
-                    if (resetHighScoreSelected) {
-
-                        resetHighScoreSelected = false;
-                    } else {
-                        drawStringOptions(g);
-                    }
-                } else {
-                    if (startGameSelected) {
-                        g.drawString("> Start game",(800-g.getFontMetrics().stringWidth("> Start game"))/2,300);
-                        g.drawString("  Option",(800-g.getFontMetrics().stringWidth("  Option"))/2,320);
-                    } else if (optionSelected) {
-                        g.drawString("  Start game",(800-g.getFontMetrics().stringWidth("  Start game"))/2,300);
-                        g.drawString("> Option",(800-g.getFontMetrics().stringWidth("> Option"))/2,320);
-                    }
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 < centerX && p1Ship.getY()+ p1Ship.getHeight()/2 > centerY) {
+                    ((ShipGameObject) p1Ship).changeAccel(pull,-pull);
                 }
-            }
-			else if (waitingForLevelPress || waitingForPausePress) {
-                g.setColor(new Color(.3f, .4f, .5f, .6f));
-                g.fillRect(0,0,800,600);
-				g.setColor(Color.white);
-				g.drawString(message,(800-g.getFontMetrics().stringWidth(message))/2,250);
-				g.drawString("Press any key",(800-g.getFontMetrics().stringWidth("Press any key"))/2,300);
-			}
-			
-			// finally, we've completed drawing so clear up the graphics
-			// and flip the buffer over
-			g.dispose();
-			strategy.show();
-			
-			// resolve the movement of the p1Ship. First assume the p1Ship
-			// isn't moving. If either cursor key is pressed then
-			// update the movement appropraitely
-			//p1Ship.setHorizontalMovement(0);
-            //p1Ship.setRotatedAngle(0);
-
-			if ((p1_leftPressed) && (!p1_rightPressed)) {
-                //p1_moveSpeedX += -5;
-                p1_currentAngle += -2;
-                p1Ship.setRotatedAngle(p1_currentAngle);
-				//p1Ship.setHorizontalMovement(p1_moveSpeedX);
-			}
-            else if ((p1_rightPressed) && (!p1_leftPressed)) {
-                //p1_moveSpeedX += 5;
-                p1_currentAngle += 2;
-                p1Ship.setRotatedAngle(p1_currentAngle);
-				//p1Ship.setHorizontalMovement(p1_moveSpeedX);
-			}
-            if ((p1_upPressed) && (!p1_downPressed)) {
-                ((ShipGameObject) p1Ship).changeAccel(Math.cos(Math.toRadians(p1_currentAngle - 90)) * 2, Math.sin(Math.toRadians(p1_currentAngle - 90)) * 2);
-                p1Ship.set2DMovement(p1_currentAngle, ((ShipGameObject) p1Ship).getHorizontalMovement(), ((ShipGameObject) p1Ship).getVerticalMovement());
-                if (p1ThrusterSFX == 0) {
-                    new AePlayWave("sounds\\asteroids_thrust.wav").start();
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 == 0 && p1Ship.getY()+ p1Ship.getHeight()/2 > centerY) {
+                    ((ShipGameObject) p1Ship).changeAccel(0,-pull);
                 }
-                p1ThrusterSFX++;
-                if (p1ThrusterSFX == 25) {
-                    p1ThrusterSFX = 0;
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 == 0 && p1Ship.getY()+ p1Ship.getHeight()/2 < centerY) {
+                    ((ShipGameObject) p1Ship).changeAccel(0,pull);
+                }
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 < centerX && p1Ship.getY()+ p1Ship.getHeight()/2 < centerY) {
+                    ((ShipGameObject) p1Ship).changeAccel(pull,pull);
+                }
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 > centerX && p1Ship.getY()+ p1Ship.getHeight()/2 < centerY) {
+                    ((ShipGameObject) p1Ship).changeAccel(-pull,pull);
+                }
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 > centerX && p1Ship.getY()+ p1Ship.getHeight()/2 == 0) {
+                    ((ShipGameObject) p1Ship).changeAccel(-pull,0);
+                }
+                else if (p1Ship.getX()+ p1Ship.getWidth()/2 < centerX && p1Ship.getY()+ p1Ship.getHeight()/2 == 0) {
+                    ((ShipGameObject) p1Ship).changeAccel(pull,0);
                 }
-
-            }
-            else if ((!p1_upPressed) && (p1_downPressed)) {
-                //p1_moveSpeedY += 5;
-                //p1Ship.setVerticalMovement(p1_moveSpeedY);
             }
-			
-			// if we're pressing fire, attempt to fire
-			if (p1_firePressed) {
-				p1TryToFire();
-			}
 
-            // Player 2 controls
-            if ((p2_leftPressed) && (!p2_rightPressed)) {
-                //p1_moveSpeedX += -5;
-                p2_currentAngle += -2;
-                p2Ship.setRotatedAngle(p2_currentAngle);
-                //p1Ship.setHorizontalMovement(p1_moveSpeedX);
-            }
-            else if ((p2_rightPressed) && (!p2_leftPressed)) {
-                //p1_moveSpeedX += 5;
-                p2_currentAngle += 2;
-                p2Ship.setRotatedAngle(p2_currentAngle);
-                //p1Ship.setHorizontalMovement(p1_moveSpeedX);
-            }
-            if ((p2_upPressed) && (!p2_downPressed)) {
-                ((ShipGameObject) p2Ship).changeAccel(Math.cos(Math.toRadians(p2_currentAngle - 90)) * 2, Math.sin(Math.toRadians(p2_currentAngle - 90)) * 2);
-                p2Ship.set2DMovement(p2_currentAngle, ((ShipGameObject) p2Ship).getHorizontalMovement(), ((ShipGameObject) p2Ship).getVerticalMovement());
-                if (p2ThrusterSFX == 0) {
-                    new AePlayWave("sounds\\asteroids_thrust.wav").start();
+            // Player 2 gravitational pull
+            // TODO: do this if statement for all player 2 operations
+            if (player2 && p2Ship != null) {
+                if (p2Ship.getX()+ p2Ship.getWidth()/2 > centerX && p2Ship.getY()+ p2Ship.getHeight()/2 > centerY) {
+                    ((ShipGameObject) p2Ship).changeAccel(-pull,-pull);
                 }
-                p2ThrusterSFX++;
-                if (p2ThrusterSFX == 25) {
-                    p2ThrusterSFX = 0;
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 < centerX && p2Ship.getY()+ p2Ship.getHeight()/2 > centerY) {
+                    ((ShipGameObject) p2Ship).changeAccel(pull,-pull);
+                }
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 == 0 && p2Ship.getY()+ p2Ship.getHeight()/2 > centerY) {
+                    ((ShipGameObject) p2Ship).changeAccel(0,-pull);
+                }
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 == 0 && p2Ship.getY()+ p2Ship.getHeight()/2 < centerY) {
+                    ((ShipGameObject) p2Ship).changeAccel(0,pull);
+                }
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 < centerX && p2Ship.getY()+ p2Ship.getHeight()/2 < centerY) {
+                    ((ShipGameObject) p2Ship).changeAccel(pull,pull);
+                }
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 > centerX && p2Ship.getY()+ p2Ship.getHeight()/2 < centerY) {
+                    ((ShipGameObject) p2Ship).changeAccel(-pull,pull);
+                }
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 > centerX && p2Ship.getY()+ p2Ship.getHeight()/2 == 0) {
+                    ((ShipGameObject) p2Ship).changeAccel(-pull,0);
+                }
+                else if (p2Ship.getX()+ p2Ship.getWidth()/2 < centerX && p2Ship.getY()+ p2Ship.getHeight()/2 == 0) {
+                    ((ShipGameObject) p2Ship).changeAccel(pull,0);
                 }
-
             }
-            else if ((!p2_upPressed) && (p2_downPressed)) {
-                //p1_moveSpeedY += 5;
-                //p1Ship.setVerticalMovement(p1_moveSpeedY);
+        }
+		// add and remove any gameObjects asked for during collisions
+		applyCommands();
+
+		// if a game event has indicated that game logic should
+		// be resolved, cycle round every entity requesting that
+		// their personal logic should be considered.
+		if (logicRequiredThisLoop) {
+			for (int i=0;i< gameObjects.size();i++) {
+				GameObject gameObject = (GameObject) gameObjects.get(i);
+				gameObject.doLogic();
+			}
+			
+			logicRequiredThisLoop = false;
+		}
+		
+		// the ships turn and thrust by a set amount each step, so by
+		// more for longer steps
+		int turn = (int) Math.round(2 * delta / TUNED_STEP);
+		double thrust = 2 * delta / TUNED_STEP;
+
+		// resolve the movement of the p1Ship. First assume the p1Ship
+		// isn't moving. If either cursor key is pressed then
+		// update the movement appropraitely
+		//p1Ship.setHorizontalMovement(0);
+        //p1Ship.setRotatedAngle(0);
+
+		if ((p1_leftPressed) && (!p1_rightPressed)) {
+            //p1_moveSpeedX += -5;
+            p1_currentAngle -= turn;
+            p1Ship.setRotatedAngle(p1_currentAngle);
+			//p1Ship.setHorizontalMovement(p1_moveSpeedX);
+		}
+        else if ((p1_rightPressed) && (!p1_leftPressed)) {
+            //p1_moveSpeedX += 5;
+            p1_currentAngle += turn;
+            p1Ship.setRotatedAngle(p1_currentAngle);
+			//p1Ship.setHorizontalMovement(p1_moveSpeedX);
+		}
+        if ((p1_upPressed) && (!p1_downPressed)) {
+            ((ShipGameObject) p1Ship).changeAccel(Math.cos(Math.toRadians(p1_currentAngle - 90)) * thrust, Math.sin(Math.toRadians(p1_currentAngle - 90)) * thrust);
+            p1Ship.set2DMovement(p1_currentAngle, ((ShipGameObject) p1Ship).getHorizontalMovement(), ((ShipGameObject) p1Ship).getVerticalMovement());
+            if (p1ThrusterSFX <= 0) {
+                SoundMixer.get().trigger("sounds\\asteroids_thrust.wav", SoundCategory.THRUST, 1, 0);
+                p1ThrusterSFX += THRUST_SOUND_INTERVAL;
             }
+            p1ThrusterSFX -= delta;
 
-            // if we're pressing fire, attempt to fire
-            if (p2_firePressed) {
-                p2TryToFire();
+        }
+        else if ((!p1_upPressed) && (p1_downPressed)) {
+            //p1_moveSpeedY += 5;
+            //p1Ship.setVerticalMovement(p1_moveSpeedY);
+        }
+		
+		// if we're pressing fire, attempt to fire
+		if (p1_firePressed) {
+			p1TryToFire();
+		}
+
+        // Player 2 controls
+        if ((p2_leftPressed) && (!p2_rightPressed)) {
+            //p1_moveSpeedX += -5;
+            p2_currentAngle -= turn;
+            p2Ship.setRotatedAngle(p2_currentAngle);
+            //p1Ship.setHorizontalMovement(p1_moveSpeedX);
+        }
+        else if ((p2_rightPressed) && (!p2_leftPressed)) {
+            //p1_moveSpeedX += 5;
+            p2_currentAngle += turn;
+            p2Ship.setRotatedAngle(p2_currentAngle);
+            //p1Ship.setHorizontalMovement(p1_moveSpeedX);
+        }
+        if ((p2_upPressed) && (!p2_downPressed)) {
+            ((ShipGameObject) p2Ship).changeAccel(Math.cos(Math.toRadians(p2_currentAngle - 90)) * thrust, Math.sin(Math.toRadians(p2_currentAngle - 90)) * thrust);
+            p2Ship.set2DMovement(p2_currentAngle, ((ShipGameObject) p2Ship).getHorizontalMovement(), ((ShipGameObject) p2Ship).getVerticalMovement());
+            if (p2ThrusterSFX <= 0) {
+                SoundMixer.get().trigger("sounds\\asteroids_thrust.wav", SoundCategory.THRUST, 1, 0);
+                p2ThrusterSFX += THRUST_SOUND_INTERVAL;
             }
+            p2ThrusterSFX -= delta;
 
-            // background tones that get faster with each passing level
-            if (!waitingForLevelPress && !waitingForPausePress && !waitingForStartPress) {
-                int toneFrequency = 100-(currentLevel*2);
-                if (toneCount == toneFrequency)
-                    new AePlayWave("sounds\\asteroids_tonehi.wav").start();
-                else if (toneCount == toneFrequency * 2) {
-                    new AePlayWave("sounds\\asteroids_tonelo.wav").start();
-                    toneCount = 0;
-                }
-                toneCount++;
+        }
+        else if ((!p2_upPressed) && (p2_downPressed)) {
+            //p1_moveSpeedY += 5;
+            //p1Ship.setVerticalMovement(p1_moveSpeedY);
+        }
+
+        // if we're pressing fire, attempt to fire
+        if (p2_firePressed) {
+            p2TryToFire();
+        }
+
+        // background tones that get faster with each passing level
+        if (!waitingForLevelPress && !waitingForPausePress && !waitingForStartPress) {
+            long toneFrequency = (100-(currentLevel*2)) * (long) TUNED_STEP;
+            long lastToneCount = toneCount;
+            toneCount += delta;
+            if (lastToneCount < toneFrequency && toneCount >= toneFrequency)
+                SoundMixer.get().trigger("sounds\\asteroids_tonehi.wav", SoundCategory.BEAT, 1, 0);
+            else if (toneCount >= toneFrequency * 2) {
+                SoundMixer.get().trigger("sounds\\asteroids_tonelo.wav", SoundCategory.BEAT, 1, 0);
+                toneCount = 0;
             }
-			
-			// finally pause for a bit. Note: this should run us at about
-			// 100 fps but on windows this might vary each loop due to
-			// a bad implementation of timer
-			try { Thread.sleep(10); } catch (Exception e) {}
+        }
+
+        // hand every sound triggered this frame to the mixer in one go
+        SoundMixer.get().flush();
+
+        // add and remove any gameObjects asked for since, e.g. new shots
+        applyCommands();
+
+        if (waitingForStartPress && waitingForOptionChange && resetHighScoreSelected) {
+            resetHighScoreSelected = false;
+        }
+	}
+
+	/**
+	 * Start a fresh game or the next level if a key press has asked for
+	 * one. Key presses arrive on the AWT event thread, so they only ask;
+	 * the gameObjects, the entity store and the pending commands are
+	 * cleared and refilled here, on the game thread, between steps.
+	 */
+	private void applyRequests() {
+		if (startGameRequested) {
+			startGameRequested = false;
+			waitingForStartPress = false;
+			stopMusic();
+			startGame();
+		}
+		if (newLevelRequested) {
+			newLevelRequested = false;
+			waitingForLevelPress = false;
+			waitingForPausePress = false;
+			startNewLevel();
+		}
+	}
+
+	/**
+	 * Draw the current state of the game: the gameObjects, the HUD and
+	 * any screen or message shown over the top.
+	 *
+	 * @param g The graphics context to draw to
+	 */
+	void drawFrame(Graphics2D g) {
+        applyQualityLevel();
+
+        // only repaint what has changed if we've been asked to
+        if (dirtyRenderer != null) {
+            dirtyRenderer.draw(g, gameObjects, renderQueue, hudLayer, getScreenLayer());
+            return;
+        }
+
+        frameSnapshot.capture(gameObjects, getScreenLayer(), interpolation);
+        drawSnapshot(g, frameSnapshot);
+	}
+
+	/**
+	 * Draw a frame from a snapshot of the game. Called by the render
+	 * thread when there is one, so it must only use the snapshot and the
+	 * overlay layers.
+	 *
+	 * @param g The graphics context to draw to
+	 * @param snapshot The state of the game to draw
+	 */
+	void drawSnapshot(Graphics2D g, WorldSnapshot snapshot) {
+        applyQualityLevel();
+
+		// blank out the surface
+        g.setRenderingHint(
+                RenderingHints.KEY_ANTIALIASING,
+                qualityLevel < 1 ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+
+		g.setColor(Color.black);
+		g.fillRect(0,0,800,600);
+
+        // draw the scores, level and lives along the top
+        hudLayer.draw(g, 0, 0);
+
+		// draw all the gameObjects, sorted by layer and sprite, unless
+		// an opaque screen is about to cover them
+		if (snapshot.getScreen() == null || !opaqueOverlays) {
+			snapshot.queueDraws(renderQueue);
+			renderQueue.flush(g);
+		}
+
+		// if we're waiting for an "any key" press then draw the
+		// current message
+        if (snapshot.getScreen() != null) {
+            snapshot.getScreen().draw(g, 0, 0);
+        }
+	}
+
+	/**
+	 * Get the screen to be shown over the game, if any
+	 *
+	 * @return The title screen or message layer, or null when playing
+	 */
+	private OverlayLayer getScreenLayer() {
+        if (waitingForStartPress) {
+            return titleLayer;
+        } else if (waitingForLevelPress || waitingForPausePress) {
+            return messageLayer;
+        }
+        return null;
+	}
+
+	/**
+	 * Start drawing frames on a thread of their own, fed with snapshots
+	 * of the world published after each update. Frames are redrawn in
+	 * full on the render thread.
+	 */
+	void startRenderThread() {
+		snapshots = new TripleBuffer<WorldSnapshot>(new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot());
+		renderThread = new RenderThread(this, renderer, snapshots);
+		renderThread.start();
+	}
+
+	/**
+	 * Stop the render thread, going back to drawing on this thread
+	 */
+	void stopRenderThread() {
+		if (renderThread != null) {
+			renderThread.shutdown();
+			renderThread = null;
+			snapshots = null;
+		}
+	}
+
+	/**
+	 * Hand the current state of the world to the render thread
+	 */
+	void publishSnapshot() {
+		snapshots.getBack().capture(gameObjects, getScreenLayer(), interpolation);
+		snapshots.publish();
+		renderThread.wake();
+	}
+
+	/**
+	 * Get the length of each simulation step
+	 *
+	 * @return The time each step advances the game by (ms)
+	 */
+	long getSimulationStep() {
+		return simulationStep;
+	}
+
+	/**
+	 * Set the rate the simulation is advanced at. Steps are a whole
+	 * number of milliseconds, so the rate is rounded to the nearest one.
+	 *
+	 * @param rate The number of simulation steps a second
+	 */
+	void setSimulationRate(int rate) {
+		simulationStep = Math.max(1, Math.round(1000.0 / rate));
+	}
+
+	/**
+	 * Set the most simulation steps run in one loop while catching up
+	 * after a slow frame
+	 *
+	 * @param steps The most steps per loop
+	 */
+	void setMaxSimulationSteps(int steps) {
+		maxSimulationSteps = Math.max(1, steps);
+	}
+
+	FramePacer getPacer() {
+		return pacer;
+	}
+
+	/**
+	 * Set the rendering quality. Each level gives up a little more than
+	 * the one before:
+	 * <p>
+	 * 1 - no antialiasing<br>
+	 * 2 - rotated sprites rendered at coarser angles<br>
+	 * 3 - screens shown over the game drawn opaque, so the game beneath
+	 * isn't drawn, and the HUD checked for changes less often
+	 * <p>
+	 * The render queue and HUD may be in the middle of drawing on the
+	 * render thread, so the change is made at the start of the next
+	 * frame drawn, by whichever thread draws it.
+	 *
+	 * @param level The quality level, 0 being full quality
+	 */
+	void setQualityLevel(int level) {
+		requestedQualityLevel.set(level);
+	}
+
+	/**
+	 * Change to the quality level last asked for, if it has changed.
+	 * Called at the start of each frame on the thread drawing it.
+	 */
+	private void applyQualityLevel() {
+		int level = requestedQualityLevel.getAndSet(-1);
+		if (level < 0) {
+			return;
 		}
+		qualityLevel = level;
+		renderQueue.setAntialiasing(level < 1);
+		// collision masks stay at the step they were made at, so the
+		// game plays the same whatever quality it is drawn at
+		RotatedSpriteCache.get().setStep(level < 2 ? fullQualityStep : Math.max(5, fullQualityStep));
+		opaqueOverlays = level >= 3;
+		hudLayer.setUpdateInterval(level < 3 ? 1 : 10);
+	}
+
+	int getQualityLevel() {
+		return qualityLevel;
+	}
+
+	QualityGovernor getGovernor() {
+		return governor;
+	}
+
+	long getDroppedSteps() {
+		return droppedSteps;
+	}
+
+	RenderThread getRenderThread() {
+		return renderThread;
 	}
 
     public void increaseScore(String whichPlayer, int objectIdentifier, int level) {
@@ -1077,9 +1455,7 @@ public class Game extends Canvas {
                 else {
                     if (startGameSelected) {
                         if (e.getKeyCode() == KeyEvent.VK_ENTER) {
-                            waitingForStartPress = false;
-                            aulink.stopMusic();
-                            startGame();
+                            startGameRequested = true;
                             pressCount = 0;
                         } else if (e.getKeyCode() == KeyEvent.VK_DOWN) {
                             startGameSelected = false;
@@ -1196,10 +1572,7 @@ public class Game extends Canvas {
 					// since we've now recieved our key typed
 					// event we can mark it as such and start 
 					// our new game
-					waitingForStartPress = false;
-                    aulink.stopMusic();
-
-					startGame();
+					startGameRequested = true;
 					pressCount = 0;
 				} else {
 					pressCount++;
@@ -1210,8 +1583,7 @@ public class Game extends Canvas {
                     // since we've now recieved our key typed
                     // event we can mark it as such and start
                     // our new game
-                    waitingForLevelPress = false;
-                    startNewLevel();
+                    newLevelRequested = true;
                     pressCount = 0;
                 } else {
                     pressCount++;
@@ -1222,8 +1594,7 @@ public class Game extends Canvas {
                     // since we've now recieved our key typed
                     // event we can mark it as such and start
                     // our new game
-                    waitingForPausePress = false;
-                    startNewLevel();
+                    newLevelRequested = true;
                     pressCount = 0;
                 } else {
                     pressCount++;
@@ -1238,7 +1609,244 @@ public class Game extends Canvas {
 		}
 	}
 
-    public ArrayList getGameObjects() {
+    /**
+     * The scores, level and lives along the top of the screen
+     */
+    private class HudLayer extends OverlayLayer {
+        public HudLayer() {
+            super(800, 30);
+        }
+
+        protected void update() {
+            watch(0, p1ScoreCount);
+            watch(1, p2ScoreCount);
+            watch(2, currentLevel);
+            watch(3, livesCount1);
+            watch(4, livesCount2);
+        }
+
+        protected void render(Graphics2D g) {
+            // draw the score in the top left and right corner
+            g.setColor(Color.white);
+            g.drawString(Integer.toString(p1ScoreCount),20,20);
+            g.drawString(Integer.toString(p2ScoreCount),760,20);
+            // draw level in center top
+            g.drawString(Integer.toString(currentLevel),398,20);
+
+            // draw lives on top
+            g.drawString("P1 Lives: " + Integer.toString(livesCount1), 100, 20);
+            g.drawString("P2 Lives: " + Integer.toString(livesCount2), 650, 20);
+        }
+    }
+
+    /**
+     * The title screen, shown over the game while waiting to start
+     */
+    private class TitleLayer extends OverlayLayer {
+        public TitleLayer() {
+            super(800, 600);
+        }
+
+        protected void update() {
+            watch(0, message);
+            watch(1, waitingForNewHighScore);
+            watch(2, newHighScoreName);
+            watch(3, java.util.Arrays.hashCode(highScores));
+            watch(4, waitingForOptionChange);
+            watch(5, currentOptionIndex);
+            watch(6, startingLivesCount);
+            watch(7, startingAsteroidCount);
+            watch(8, startGameSelected);
+            watch(9, optionSelected);
+            watch(10, opaqueOverlays);
+        }
+
+        protected void render(Graphics2D g) {
+            // Overlay transparent bg onto game area
+            g.setColor(new Color(0f, 0f, 0f, opaqueOverlays ? 1f : .75f));
+            g.fillRect(0,0,800,600);
+
+            // Draw the logo
+            if (logo != null) {
+                g.drawImage(logo, (800 - logo.getWidth()) / 2, 20, null);
+            }
+
+            g.setColor(Color.white);
+            g.drawString(message,(800-g.getFontMetrics().stringWidth(message))/2,250);
+
+            if (waitingForNewHighScore) {
+                g.drawString("New High Scores!", (800-g.getFontMetrics().stringWidth("New High Scores!"))/2, 260);
+                g.drawString("Name: " + newHighScoreName, (800-g.getFontMetrics().stringWidth("Name: " + newHighScoreName))/2, 280);
+            } else {
+                // draw highscore string
+                int i;
+                g.drawString("Rank", 20, 230);
+                for (i = 0; i < highScoresCount; i++) {
+                    g.drawString(Integer.toString(i + 1) + ". " + highScores[i], 20, 250 + i * 20);
+                }
+            }
+
+            if (waitingForOptionChange) {
+                drawStringOptions(g);
+            } else {
+                if (startGameSelected) {
+                    g.drawString("> Start game",(800-g.getFontMetrics().stringWidth("> Start game"))/2,300);
+                    g.drawString("  Option",(800-g.getFontMetrics().stringWidth("  Option"))/2,320);
+                } else if (optionSelected) {
+                    g.drawString("  Start game",(800-g.getFontMetrics().stringWidth("  Start game"))/2,300);
+                    g.drawString("> Option",(800-g.getFontMetrics().stringWidth("> Option"))/2,320);
+                }
+            }
+        }
+    }
+
+    /**
+     * The level complete or pause message
+     */
+    private class MessageLayer extends OverlayLayer {
+        public MessageLayer() {
+            super(800, 600);
+        }
+
+        protected void update() {
+            watch(0, message);
+            watch(1, opaqueOverlays);
+        }
+
+        protected void render(Graphics2D g) {
+            g.setColor(new Color(.3f, .4f, .5f, opaqueOverlays ? 1f : .6f));
+            g.fillRect(0,0,800,600);
+            g.setColor(Color.white);
+            g.drawString(message,(800-g.getFontMetrics().stringWidth(message))/2,250);
+            g.drawString("Press any key",(800-g.getFontMetrics().stringWidth("Press any key"))/2,300);
+        }
+    }
+
+    /**
+     * Stop the title music, ready for it to be played again from the start
+     */
+    private void stopMusic() {
+        if (music != null) {
+            music.stop();
+        }
+    }
+
+    /**
+     * Leave the title screen and start a game, as if start had been
+     * chosen from the menu
+     */
+    void beginPlay() {
+        waitingForStartPress = false;
+        stopMusic();
+        startGame();
+    }
+
+    /**
+     * Switch between repainting only what has changed each frame and
+     * redrawing every frame in full
+     *
+     * @param dirty True to repaint only what has changed
+     */
+    void setDirtyRendering(boolean dirty) {
+        dirtyRenderer = dirty ? new DirtyRectRenderer(800, 600) : null;
+    }
+
+    RenderQueue getRenderQueue() {
+        return renderQueue;
+    }
+
+    DirtyRectRenderer getDirtyRenderer() {
+        return dirtyRenderer;
+    }
+
+    /**
+     * Create the collision broadphase with the given name
+     *
+     * @param name "grid" for a spatial hash, "sap" for sweep and prune,
+     * or "brute" to test every pair
+     * @return The broadphase, or null to test every pair
+     */
+    static CollisionBroadphase createBroadphase(String name) {
+        if ("brute".equals(name)) {
+            return null;
+        }
+        if ("sap".equals(name)) {
+            return new SweepAndPrune();
+        }
+        return new SpatialHashGrid();
+    }
+
+    /**
+     * Create the table of which kinds of gameObject collide with which,
+     * and what happens when they do. Pairs not listed here (asteroids
+     * with each other, anything with an alien or a rogue ship) are
+     * never tested.
+     *
+     * @return The collision matrix
+     */
+    static CollisionMatrix createCollisionMatrix() {
+        CollisionMatrix matrix = new CollisionMatrix();
+        matrix.register(EntityType.SHOT, EntityType.ASTEROID, new CollisionHandler() {
+            public void collide(GameObject shot, GameObject asteroid) {
+                ((ShotGameObject) shot).hitAsteroid((AsteroidGameObject) asteroid);
+            }
+        });
+        matrix.register(EntityType.SHOT, EntityType.SHIP, new CollisionHandler() {
+            public void collide(GameObject shot, GameObject ship) {
+                ((ShotGameObject) shot).hitShip((ShipGameObject) ship);
+            }
+        });
+        matrix.register(EntityType.SHOT, EntityType.ALIEN_SHIP, new CollisionHandler() {
+            public void collide(GameObject shot, GameObject alienShip) {
+                ((ShotGameObject) shot).hitAlienShip((AlienShipGameObject) alienShip);
+            }
+        });
+        matrix.register(EntityType.SHIP, EntityType.ASTEROID, new CollisionHandler() {
+            public void collide(GameObject ship, GameObject asteroid) {
+                ((ShipGameObject) ship).hitAsteroid((AsteroidGameObject) asteroid);
+            }
+        });
+        matrix.register(EntityType.SHIP, EntityType.ALIEN_SHIP, new CollisionHandler() {
+            public void collide(GameObject ship, GameObject alienShip) {
+                ((ShipGameObject) ship).hitAlienShip((AlienShipGameObject) alienShip);
+            }
+        });
+        matrix.register(EntityType.SHIP, EntityType.GRAVITY, new CollisionHandler() {
+            public void collide(GameObject ship, GameObject gravity) {
+                ((ShipGameObject) ship).hitGravity((GravitationalGameObject) gravity);
+            }
+        });
+        matrix.register(EntityType.SHIP, EntityType.SHIP, new CollisionHandler() {
+            public void collide(GameObject ship, GameObject other) {
+                ((ShipGameObject) ship).hitShip((ShipGameObject) other);
+            }
+        });
+        matrix.register(EntityType.ALIEN_SHIP, EntityType.ASTEROID, new CollisionHandler() {
+            public void collide(GameObject alienShip, GameObject asteroid) {
+                ((AlienShipGameObject) alienShip).hitAsteroid((AsteroidGameObject) asteroid);
+            }
+        });
+        return matrix;
+    }
+
+    CollisionMatrix getCollisionMatrix() {
+        return collisionMatrix;
+    }
+
+    /**
+     * Set how pairs of gameObjects are found for collision tests
+     *
+     * @param broadphase The broadphase to use, or null to test every pair
+     */
+    void setBroadphase(CollisionBroadphase broadphase) {
+        this.broadphase = broadphase;
+    }
+
+    CollisionBroadphase getBroadphase() {
+        return broadphase;
+    }
+
+    public ArrayList<GameObject> getGameObjects() {
         return gameObjects;
     }
 
@@ -1258,6 +1866,16 @@ public class Game extends Canvas {
         return friendlyFireOn;
     }
 
+    /**
+     * Check if a game is being played, rather than waiting on the title
+     * screen or a message for a key press
+     *
+     * @return True if the world is moving
+     */
+    boolean isPlaying() {
+        return !waitingForStartPress && !waitingForLevelPress && !waitingForPausePress;
+    }
+
     /**
 	 * The entry point into the game. We'll simply create an
 	 * instance of class which will start the display and game
@@ -2,29 +2,44 @@ package org.newdawn.spaceinvaders;
 
 import java.awt.Graphics;
 import java.awt.Rectangle;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 /**
  * The object representing all other objects in game.
  *
- * Position coordinates are doubles to preserve accuracy
+ * Position coordinates are doubles to preserve accuracy. They are
+ * only changed by the game loop; other threads see them through the
+ * snapshots handed to the render thread, so plain fields are enough.
+ * <p>
+ * The position, speed and angle of the entity live in a row of the
+ * EntityStore, where they are moved along with every other entity in
+ * one pass; this object is a view onto that row. Once the entity is
+ * removed from the game its row is moved out of the shared store, so
+ * the object can still be asked where it was. Pooled entities move to
+ * one store they all share, and keep their row there until they are
+ * reused or dropped by their pool; others get a store of their own.
+ * <p>
+ * Fast, small entities (shots) can move further than their own size
+ * in one step, and at a low simulation rate would jump straight over
+ * whatever they should have hit. Such entities say so with isSwept(),
+ * and are tested against everything along the path they moved over
+ * the last step, not just where they ended up. This can be turned off
+ * with the "asteroids.collision.swept" property.
  */
 public abstract class GameObject {
-    protected ConcurrentMap<String, Double> sync_cord_xy =  new ConcurrentHashMap<String, Double>(2);
-    protected ConcurrentMap<String, Double> sync_cord_dxdy =  new ConcurrentHashMap<String, Double>(2);
-//    /** The current x location of this entity */
-//	protected double x;
-//	/** The current y location of this entity */
-//	protected double y;
-    /** The current angle (in degrees) of this entity */
-    protected int currentAngle;
+	/** True if fast entities are tested along the whole of each step, not just where they end up */
+	private static boolean sweptCollisions = Boolean.parseBoolean(System.getProperty("asteroids.collision.swept", "true"));
 	/** The sprite that represents this entity */
 	protected Sprite sprite;
-//	/** The current speed of this entity horizontally (pixels/sec) */
-//	protected double dx;
-//	/** The current speed of this entity vertically (pixels/sec) */
-//	protected double dy;
+	/** The store holding this entity's state */
+	private EntityStore store = EntityStore.get();
+	/** The index of this entity's row in the store */
+	private int index;
+	/** The store this entity's row is kept in once it leaves the game if it isn't pooled, made on removal */
+	private EntityStore ownStore;
+	/** True if this entity has been asked to leave the game this step */
+	private boolean despawnPending;
+	/** The slot the sweep and prune broadphase keeps this entity in, or -1 */
+	private int broadphaseSlot = -1;
 	/** The rectangle used for this entity during collisions  resolution */
 	private Rectangle me = new Rectangle();
 	/** The rectangle used for other entities during collision resolution */
@@ -38,23 +53,14 @@ public abstract class GameObject {
 	 * @param y The initial y location of this entity
 	 */
 	public GameObject(String ref, int x, int y) {
-		this.sprite = SpriteStore.get().getSprite(ref);
-        this.currentAngle = 0;
-        sync_cord_xy.put("x", new Double(x));
-        sync_cord_xy.put("y", new Double(y));
-        sync_cord_dxdy.put("dx", new Double(0));
-        sync_cord_dxdy.put("dy", new Double(0));
-//		this.x = x;
-//		this.y = y;
+		this(ref, (double) x, (double) y);
 	}
 
     public GameObject(String ref, double x, double y) {
         this.sprite = SpriteStore.get().getSprite(ref);
-        this.currentAngle = 0;
-        sync_cord_xy.put("x", new Double(x));
-        sync_cord_xy.put("y", new Double(y));
-        sync_cord_dxdy.put("dx", new Double(0));
-        sync_cord_dxdy.put("dy", new Double(0));
+        this.index = store.add(this, getEntityType());
+        store.x[index] = x;
+        store.y[index] = y;
     }
 
     /**
@@ -66,28 +72,159 @@ public abstract class GameObject {
      * @param currentAngle The initial angle of this entity
      */
     public GameObject(String ref, int x, int y, int currentAngle) {
-        this.sprite = SpriteStore.get().getSprite(ref);
-        sync_cord_xy.put("x", new Double(x));
-        sync_cord_xy.put("y", new Double(y));
-        this.currentAngle = currentAngle;
-        sync_cord_dxdy.put("dx", new Double(0));
-        sync_cord_dxdy.put("dy", new Double(0));
+        this(ref, (double) x, (double) y);
+        store.angle[index] = currentAngle;
+    }
+
+    /**
+     * Get the kind of entity this is, recorded in the entity store
+     *
+     * @return The kind of entity
+     */
+    protected EntityType getEntityType() {
+        return EntityType.SHIP;
+    }
+
+    /**
+     * Note that this entity's row in the store has moved
+     *
+     * @param index The new index of the row
+     */
+    void moveTo(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Take this entity out of the shared store, once it has been
+     * removed from the game. Its last state is kept in a store of its
+     * own, so it no longer moves but can still be asked where it is.
+     */
+    void detach() {
+        if (store != EntityStore.get()) {
+            return;
+        }
+        EntityStore detached;
+        if (isPooled()) {
+            detached = EntityStore.getDetached();
+        } else {
+            if (ownStore == null) {
+                ownStore = new EntityStore(1);
+            }
+            detached = ownStore;
+        }
+        int detachedIndex = detached.copy(store, index, this);
+        store.remove(index);
+        store = detached;
+        index = detachedIndex;
+    }
+
+    /**
+     * Give up the row this entity kept when it left the game, once it
+     * will never be looked at again (e.g. its pool was full)
+     */
+    void release() {
+        if (store == null || isAttached()) {
+            return;
+        }
+        store.remove(index);
+        store = null;
     }
 
-    protected void incrementCordCountXY(String key, Double addValue) {
-        Double oldVal, newVal;
-        do {
-            oldVal = sync_cord_xy.get(key);
-            newVal = (oldVal == null) ? 1 : (oldVal + addValue);
-        } while (!sync_cord_xy.replace(key, oldVal, newVal));
+    /**
+     * Bring an entity that has left the game back into it as though it
+     * had just been created, so pooled objects can be reused. Subclasses
+     * reset their own state alongside.
+     *
+     * @param ref The reference to the image to be displayed for this entity
+     * @param x The initial x location of this entity
+     * @param y The initial y location of this entity
+     * @param currentAngle The initial angle of this entity
+     */
+    protected void reinit(String ref, int x, int y, int currentAngle) {
+        if (isAttached()) {
+            return;
+        }
+        release();
+        sprite = SpriteStore.get().getSprite(ref);
+        store = EntityStore.get();
+        index = store.add(this, getEntityType());
+        store.x[index] = x;
+        store.y[index] = y;
+        store.angle[index] = currentAngle;
     }
 
-    protected void incrementdxdyCordCountXY(String key, Double addValue) {
-        Double oldVal, newVal;
-        do {
-            oldVal = sync_cord_dxdy.get(key);
-            newVal = (oldVal == null) ? 1 : (oldVal + addValue);
-        } while (!sync_cord_dxdy.replace(key, oldVal, newVal));
+    /**
+     * Clear anything this entity holds on to (sounds, other objects)
+     * when it is given back to a pool. Does nothing by default.
+     */
+    protected void reset() {
+    }
+
+    /**
+     * Give this entity back to the pool it came from, once it has left
+     * the game. Entities that aren't pooled are left to the garbage
+     * collector, which is the default.
+     */
+    void recycle() {
+    }
+
+    /**
+     * Check if this entity goes back to a pool when it leaves the game,
+     * so it only needs a row while it waits there to be reused
+     *
+     * @return True if the entity is pooled
+     */
+    boolean isPooled() {
+        return false;
+    }
+
+    /**
+     * Check if this entity is still in the shared store, i.e. in the game
+     *
+     * @return True if the entity hasn't been detached
+     */
+    public boolean isAttached() {
+        return store == EntityStore.get();
+    }
+
+    /**
+     * Check if this entity has been asked to leave the game and will
+     * do so at the end of the current step
+     *
+     * @return True if the entity is on its way out
+     */
+    public boolean isDespawnPending() {
+        return despawnPending;
+    }
+
+    void setDespawnPending(boolean despawnPending) {
+        this.despawnPending = despawnPending;
+    }
+
+    int getBroadphaseSlot() {
+        return broadphaseSlot;
+    }
+
+    void setBroadphaseSlot(int broadphaseSlot) {
+        this.broadphaseSlot = broadphaseSlot;
+    }
+
+    /**
+     * Set how long this entity lives for
+     *
+     * @param lifetime The time in milliseconds, 0 to live for ever
+     */
+    protected void setLifetime(int lifetime) {
+        store.lifetime[index] = lifetime;
+    }
+
+    /**
+     * Get the sprite drawn for this entity
+     *
+     * @return The sprite of this entity
+     */
+    public Sprite getSprite() {
+        return sprite;
     }
 
     /**
@@ -115,44 +252,76 @@ public abstract class GameObject {
 	 * @param delta The amount of time that has passed in milliseconds
 	 */
 	public void move(long delta) {
-        // TODO: improve for velocity
-		// update the location of the entity based on move speeds
-        incrementCordCountXY("x", new Double((delta * sync_cord_dxdy.get("dx")) / 1000));
-        incrementCordCountXY("y", new Double((delta * sync_cord_dxdy.get("dy")) / 1000));
-//		x += (delta * dx) / 1000;
-//		y += (delta * dy) / 1000;
-
-        // if we're moving left and have reached the left hand side
-        // of the screen, don't move
-        if (sync_cord_xy.get("x").intValue() < 0) {
-            sync_cord_xy.replace("x", new Double(800));
-        }
-        // if we're moving right and have reached the right hand side
-        // of the screen, don't move
-        if (sync_cord_xy.get("x").intValue() > 800) {
-            sync_cord_xy.replace("x", new Double(0));
-        }
-        // if we're moving up and have reached the top side
-        // of the screen, don't move
-        if (sync_cord_xy.get("y").intValue() < 0) {
-            sync_cord_xy.replace("y", new Double(600));
-        }
-        // if we're moving down and have reached the bottom side
-        // of the screen, don't move
-        if (sync_cord_xy.get("y").intValue() > 600) {
-            sync_cord_xy.replace("y", new Double(0));
-        }
-        //currentAngle += (delta * dcurrentangle) / 1000;
+		// update the location of the entity based on move speeds,
+		// wrapping round when it goes off the edge of the screen
+		store.x[index] = EntityStore.wrap(store.x[index] + (delta * store.dx[index]) / 1000, EntityStore.WORLD_WIDTH);
+		store.y[index] = EntityStore.wrap(store.y[index] + (delta * store.dy[index]) / 1000, EntityStore.WORLD_HEIGHT);
 	}
 	
+	/**
+	 * Note where this entity is at the start of a simulation step, so
+	 * it can be drawn part of the way between there and where it ends up
+	 */
+	public void savePosition() {
+		store.previousX[index] = store.x[index];
+		store.previousY[index] = store.y[index];
+		store.previousAngle[index] = store.angle[index];
+	}
+
+	/**
+	 * Get the x location to draw this entity at, part of the way
+	 * between where it was at the start of the last step and now. An
+	 * entity that wrapped round the screen is drawn where it is now.
+	 *
+	 * @param alpha How far (0 to 1) between the two locations
+	 * @return The x location to draw at
+	 */
+	public int getInterpolatedX(float alpha) {
+		return (int) interpolate(store.previousX[index], store.x[index], alpha, 400);
+	}
+
+	/**
+	 * Get the y location to draw this entity at, part of the way
+	 * between where it was at the start of the last step and now
+	 *
+	 * @param alpha How far (0 to 1) between the two locations
+	 * @return The y location to draw at
+	 */
+	public int getInterpolatedY(float alpha) {
+		return (int) interpolate(store.previousY[index], store.y[index], alpha, 300);
+	}
+
+	/**
+	 * Get the angle to draw this entity at, turning the short way
+	 * round from its angle at the start of the last step
+	 *
+	 * @param alpha How far (0 to 1) between the two angles
+	 * @return The angle to draw at
+	 */
+	public int getInterpolatedAngle(float alpha) {
+		int angle = store.angle[index];
+		if (Double.isNaN(store.previousX[index])) {
+			return angle;
+		}
+		int previousAngle = store.previousAngle[index];
+		int turn = ((angle - previousAngle) % 360 + 540) % 360 - 180;
+		return previousAngle + Math.round(turn * alpha);
+	}
+
+	private double interpolate(double previous, double current, float alpha, double maxJump) {
+		if (Double.isNaN(store.previousX[index]) || Math.abs(current - previous) > maxJump) {
+			return current;
+		}
+		return previous + (current - previous) * alpha;
+	}
+
 	/**
 	 * Set the horizontal speed of this entity
 	 * 
 	 * @param dx The horizontal speed of this entity (pixels/sec)
 	 */
 	public void setHorizontalMovement(double dx) {
-        sync_cord_dxdy.replace("dx", new Double(dx));
-//		this.dx = dx;
+        store.dx[index] = dx;
 	}
 
     /**
@@ -163,8 +332,8 @@ public abstract class GameObject {
      * @param dy The y velocity of this entity (pixels/sec)
      */
     public void set2DMovement(int currentAngle, double dx, double dy) {
-        sync_cord_dxdy.replace("dx", new Double(dx));
-        sync_cord_dxdy.replace("dy", new Double(dy));
+        store.dx[index] = dx;
+        store.dy[index] = dy;
     }
 
 	/**
@@ -173,7 +342,7 @@ public abstract class GameObject {
 	 * @param dy The vertical speed of this entity (pixels/sec)
 	 */
 	public void setVerticalMovement(double dy) {
-        sync_cord_dxdy.replace("dy", new Double(dy));
+        store.dy[index] = dy;
 	}
 
     /**
@@ -182,7 +351,7 @@ public abstract class GameObject {
      * @param currentAngle The rotational angle of this entity
      */
     public void setRotatedAngle(int currentAngle) {
-        this.currentAngle = currentAngle;
+        store.angle[index] = currentAngle;
     }
 	
 	/**
@@ -191,7 +360,7 @@ public abstract class GameObject {
 	 * @return The horizontal speed of this entity (pixels/sec)
 	 */
 	public double getHorizontalMovement() {
-		return sync_cord_dxdy.get("dx");
+		return store.dx[index];
 	}
 
 	/**
@@ -200,7 +369,7 @@ public abstract class GameObject {
 	 * @return The vertical speed of this entity (pixels/sec)
 	 */
 	public double getVerticalMovement() {
-		return sync_cord_dxdy.get("dy");
+		return store.dy[index];
 	}
 
     /**
@@ -209,7 +378,7 @@ public abstract class GameObject {
      * @return The vertical speed of this entity (pixels/sec)
      */
     public int getRotationalMovement() {
-        return currentAngle;
+        return store.angle[index];
     }
 	
 	/**
@@ -218,7 +387,37 @@ public abstract class GameObject {
 	 * @param g The graphics context on which to draw
 	 */
 	public void draw(Graphics g) {
-		sprite.draw(g,sync_cord_xy.get("x").intValue(), sync_cord_xy.get("y").intValue(), currentAngle);
+		sprite.draw(g,getX(), getY(), store.angle[index]);
+	}
+	
+	/**
+	 * Record this entity to be drawn with the rest of the frame
+	 * 
+	 * @param queue The queue of draws for this frame
+	 */
+	public void queueDraw(RenderQueue queue) {
+		queue.add(sprite, getX(), getY(), store.angle[index], getRenderLayer());
+	}
+
+	/**
+	 * Get the layer this entity is drawn in
+	 *
+	 * @return The layer to draw this entity in
+	 */
+	protected RenderLayer getRenderLayer() {
+		return RenderLayer.SHIP;
+	}
+	
+	/**
+	 * Get the area of the screen this entity covers when drawn. Sprites
+	 * are drawn rotated about their center, so this is the square that
+	 * holds the sprite at any angle, plus a pixel for antialiasing.
+	 *
+	 * @param bounds The rectangle to fill in with the area
+	 */
+	public void getDrawBounds(Rectangle bounds) {
+		int size = (int) Math.ceil(Math.hypot(sprite.getWidth(), sprite.getHeight())) + 2;
+		bounds.setBounds(getX() + sprite.getWidth()/2 - size/2, getY() + sprite.getHeight()/2 - size/2, size, size);
 	}
 	
 	/**
@@ -234,7 +433,7 @@ public abstract class GameObject {
 	 * @return The x location of this entity
 	 */
 	public int getX() {
-		return sync_cord_xy.get("x").intValue();
+		return (int) store.x[index];
 	}
 
 	/**
@@ -243,7 +442,7 @@ public abstract class GameObject {
 	 * @return The y location of this entity
 	 */
 	public int getY() {
-		return (int) sync_cord_xy.get("y").intValue();
+		return (int) store.y[index];
 	}
 
     /**
@@ -252,26 +451,315 @@ public abstract class GameObject {
      * @return The angle of this entity
      */
     public int getAngle() {
-        return (int) currentAngle;
+        return store.angle[index];
     }
 	
 	/**
-	 * Check if this entity collised with another.
+	 * Check if this entity collised with another. If either entity is
+	 * swept, a pair that doesn't touch now is also tested along the
+	 * way both moved over the last step.
 	 * 
 	 * @param other The other entity to check collision against
      * @return True if the entities collide with each other
 	 */
 	public boolean collidesWith(GameObject other) {
-		me.setBounds(getX(),getY(),sprite.getWidth()-5,sprite.getHeight()-5);
-		him.setBounds((int) other.getX(),(int) other.getY(),other.sprite.getWidth()-5,other.sprite.getHeight()-5);
+		if (overlapsAt(getX(), getY(), other, other.getX(), other.getY())) {
+			return true;
+		}
+		if (sweptCollisions && (isSwept() || other.isSwept())) {
+			return sweptCollidesWith(other);
+		}
+		return false;
+	}
+
+	/**
+	 * Check if this entity would overlap another if the two were at the
+	 * given locations. The screen wraps round, so the other entity is
+	 * taken where it is closest, which may be across an edge.
+	 */
+	private boolean overlapsAt(int x, int y, GameObject other, int otherX, int otherY) {
+		int apartX = (otherX + other.getWidth() / 2) - (x + getWidth() / 2);
+		int apartY = (otherY + other.getHeight() / 2) - (y + getHeight() / 2);
+		if (apartX > EntityStore.WORLD_WIDTH / 2) {
+			otherX -= EntityStore.WORLD_WIDTH;
+		} else if (apartX < -EntityStore.WORLD_WIDTH / 2) {
+			otherX += EntityStore.WORLD_WIDTH;
+		}
+		if (apartY > EntityStore.WORLD_HEIGHT / 2) {
+			otherY -= EntityStore.WORLD_HEIGHT;
+		} else if (apartY < -EntityStore.WORLD_HEIGHT / 2) {
+			otherY += EntityStore.WORLD_HEIGHT;
+		}
+
+		// compare the solid pixels where both sprites have masks
+		CollisionMask mask = sprite.getCollisionMask();
+		CollisionMask otherMask = other.sprite.getCollisionMask();
+		if (mask != null && otherMask != null) {
+			return mask.overlaps(x, y, getAngle(), otherMask, otherX, otherY, other.getAngle());
+		}
+		
+		getCollisionBounds(me);
+		me.translate(x - getX(), y - getY());
+		other.getCollisionBounds(him);
+		him.translate(otherX - other.getX(), otherY - other.getY());
 
 		return me.intersects(him);
 	}
-	
+
 	/**
-	 * Notification that this entity collided with another.
-	 * 
-	 * @param other The entity with which this entity collided.
+	 * Check if this entity touched another at any point during the last
+	 * step, taking both to have moved in a straight line. The step is
+	 * looked at from the other entity, which this one moves past; the
+	 * parts of the step where their bounding circles overlap are found
+	 * first, and the entities are only tested exactly through those.
+	 */
+	private boolean sweptCollidesWith(GameObject other) {
+		double stepX = getStepX() - other.getStepX();
+		double stepY = getStepY() - other.getStepY();
+		double length = stepX * stepX + stepY * stepY;
+		// less than a pixel apart, the test of where they ended up will do
+		if (length < 1) {
+			return false;
+		}
+
+		// the screen wraps round, so the other is seen from this one at
+		// its closest where they end up, and a screen's width or height
+		// either side of that, which either may have crossed into
+		int width = EntityStore.WORLD_WIDTH;
+		int height = EntityStore.WORLD_HEIGHT;
+		int apartX = (other.getX() + other.getWidth() / 2) - (getX() + getWidth() / 2);
+		int apartY = (other.getY() + other.getHeight() / 2) - (getY() + getHeight() / 2);
+		int nearestX = -(int) Math.round((double) apartX / width) * width;
+		int nearestY = -(int) Math.round((double) apartY / height) * height;
+		for (int offsetX = nearestX - width; offsetX <= nearestX + width; offsetX += width) {
+			for (int offsetY = nearestY - height; offsetY <= nearestY + height; offsetY += height) {
+				if (sweep(other, offsetX, offsetY, stepX, stepY, length)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test this entity against another through the part of the last
+	 * step where their bounding circles overlap, with the other seen
+	 * from an offset
+	 */
+	private boolean sweep(GameObject other, int offsetX, int offsetY, double stepX, double stepY, double length) {
+		// the centers at the end of the step, relative to the other
+		// entity, and at the start
+		double endX = (getX() + getWidth() / 2) - (other.getX() + offsetX + other.getWidth() / 2);
+		double endY = (getY() + getHeight() / 2) - (other.getY() + offsetY + other.getHeight() / 2);
+		double startX = endX - stepX;
+		double startY = endY - stepY;
+
+		// the bounding circles overlap where |start + step * t| < reach,
+		// with a little more reach as locations are rounded to pixels
+		double reach = getReach() + other.getReach() + 2;
+		double half = startX * stepX + startY * stepY;
+		double discriminant = half * half - length * (startX * startX + startY * startY - reach * reach);
+		if (discriminant <= 0) {
+			return false;
+		}
+		double root = Math.sqrt(discriminant);
+		double first = Math.max(0, (-half - root) / length);
+		double last = Math.min(1, (-half + root) / length);
+		if (first > last) {
+			return false;
+		}
+
+		// the entities only move to another pixel when one of their
+		// coordinates crosses a whole number, so test them exactly once
+		// between each crossing, where they were on the screen then
+		double myStartX = getStartX();
+		double myStartY = getStartY();
+		double otherStartX = other.getStartX();
+		double otherStartY = other.getStartY();
+		double myStepX = getStepX();
+		double myStepY = getStepY();
+		double otherStepX = other.getStepX();
+		double otherStepY = other.getStepY();
+		double time = first;
+		while (true) {
+			double next = nextCrossing(myStartX, myStepX, time, last);
+			next = nextCrossing(myStartY, myStepY, time, next);
+			next = nextCrossing(otherStartX, otherStepX, time, next);
+			next = nextCrossing(otherStartY, otherStepY, time, next);
+			double middle = (time + next) / 2;
+			if (overlapsAt((int) EntityStore.wrap(myStartX + myStepX * middle, EntityStore.WORLD_WIDTH),
+					(int) EntityStore.wrap(myStartY + myStepY * middle, EntityStore.WORLD_HEIGHT), other,
+					(int) EntityStore.wrap(otherStartX + otherStepX * middle, EntityStore.WORLD_WIDTH),
+					(int) EntityStore.wrap(otherStartY + otherStepY * middle, EntityStore.WORLD_HEIGHT))) {
+				return true;
+			}
+			if (next >= last) {
+				return false;
+			}
+			time = next;
+		}
+	}
+
+	/**
+	 * Get the first point after the given one through the last step at
+	 * which a coordinate crosses a whole number
+	 *
+	 * @param start The value at the start of the step
+	 * @param step How far the value moved over the step
+	 * @param time The point to look from, 0 at the start of the step and 1 at the end
+	 * @param limit The latest point of interest
+	 * @return The point of the crossing, or limit if there isn't one before it
+	 */
+	private static double nextCrossing(double start, double step, double time, double limit) {
+		if (step == 0) {
+			return limit;
+		}
+		double value = start + step * time;
+		double whole = step > 0 ? Math.floor(value) + 1 : Math.ceil(value) - 1;
+		// always move on a little, in case rounding puts the crossing
+		// at or just before where we are
+		return Math.min(limit, Math.max(time + 1e-9, (whole - start) / step));
+	}
+
+	/**
+	 * Get the distance from the center of this entity to the furthest
+	 * point it can collide at
+	 */
+	private double getReach() {
+		CollisionMask mask = sprite.getCollisionMask();
+		if (mask != null) {
+			return mask.getRadius();
+		}
+		return Math.hypot(getWidth() / 2, getHeight() / 2);
+	}
+
+	/**
+	 * Get where this entity was across the screen at the start of the
+	 * last step
 	 */
-	public abstract void collidedWith(GameObject other);
+	private double getStartX() {
+		double previous = store.previousX[index];
+		return Double.isNaN(previous) ? store.x[index] : previous;
+	}
+
+	/**
+	 * Get where this entity was down the screen at the start of the
+	 * last step
+	 */
+	private double getStartY() {
+		return Double.isNaN(store.previousX[index]) ? store.y[index] : store.previousY[index];
+	}
+
+	/**
+	 * Get how far this entity moved across over the last step, the
+	 * short way round if it wrapped round the screen
+	 */
+	private double getStepX() {
+		double previous = store.previousX[index];
+		if (Double.isNaN(previous)) {
+			return 0;
+		}
+		return unwrap(store.x[index] - previous, EntityStore.WORLD_WIDTH);
+	}
+
+	/**
+	 * Get how far this entity moved down over the last step, the short
+	 * way round if it wrapped round the screen
+	 */
+	private double getStepY() {
+		if (Double.isNaN(store.previousX[index])) {
+			return 0;
+		}
+		return unwrap(store.y[index] - store.previousY[index], EntityStore.WORLD_HEIGHT);
+	}
+
+	private static double unwrap(double distance, int size) {
+		if (distance > size / 2) {
+			return distance - size;
+		}
+		if (distance < -size / 2) {
+			return distance + size;
+		}
+		return distance;
+	}
+
+	/**
+	 * Check if this entity moves fast enough for its size that it
+	 * should be tested along its whole path each step. Not by default.
+	 *
+	 * @return True if this entity is swept
+	 */
+	protected boolean isSwept() {
+		return false;
+	}
+
+	/**
+	 * Set whether swept entities are tested along their path each step
+	 *
+	 * @param swept True to test along the path, false to only test
+	 * where entities end up
+	 */
+	static void setSweptCollisions(boolean swept) {
+		sweptCollisions = swept;
+	}
+
+	/**
+	 * Get the area this entity covers for collisions. With a collision
+	 * mask that is the square around its bounding circle, which holds
+	 * the sprite at any angle; otherwise it is a little smaller than
+	 * its sprite.
+	 *
+	 * @param bounds The rectangle to fill in with the area
+	 */
+	public void getCollisionBounds(Rectangle bounds) {
+		CollisionMask mask = sprite.getCollisionMask();
+		if (mask != null) {
+			int reach = (int) Math.ceil(mask.getRadius());
+			bounds.setBounds(getX()+sprite.getWidth()/2-reach,getY()+sprite.getHeight()/2-reach,reach*2,reach*2);
+			return;
+		}
+		bounds.setBounds(getX(),getY(),sprite.getWidth()-5,sprite.getHeight()-5);
+	}
+
+	/**
+	 * Get the area this entity covered for collisions over the whole of
+	 * the last step, for the broadphase to find pairs in. This is the
+	 * collision bounds stretched back to where the entity started the
+	 * step, which may be off the edge of the screen if it wrapped.
+	 *
+	 * @param bounds The rectangle to fill in with the area
+	 */
+	public void getSweptBounds(Rectangle bounds) {
+		getCollisionBounds(bounds);
+		if (!sweptCollisions) {
+			return;
+		}
+		double stepX = getStepX();
+		double stepY = getStepY();
+		if (stepX != 0) {
+			// a pixel more, as the start is rounded down as well
+			int back = (int) Math.ceil(Math.abs(stepX)) + 1;
+			if (stepX > 0) {
+				bounds.x -= back;
+			}
+			bounds.width += back;
+		}
+		if (stepY != 0) {
+			int back = (int) Math.ceil(Math.abs(stepY)) + 1;
+			if (stepY > 0) {
+				bounds.y -= back;
+			}
+			bounds.height += back;
+		}
+	}
+
+    /**
+     * Get the kind of entity this is as an EntityType ordinal, read
+     * straight from the store for the collision filter
+     *
+     * @return The ordinal of this entity's type
+     */
+    int getTypeIndex() {
+        return store.type[index];
+    }
 }
\ No newline at end of file
@@ -7,7 +7,8 @@ public class GravitationalGameObject extends GameObject {
 	private double moveSpeed = 2;
 	/** The game in which the entity exists */
 	private Game game;
-    private int currentAngle;
+    /** The angle the object has spun to */
+    private double currentAngle;
 
 	/**
 	 * Create a new alien entity
@@ -30,30 +31,13 @@ public class GravitationalGameObject extends GameObject {
      * @param g The graphics context on which to draw
      */
     public void draw(Graphics g) {
-        sprite.draw(g,getX(),getY(), currentAngle);
+        sprite.draw(g,getX(),getY(), (int) currentAngle);
+    }
+
+    protected RenderLayer getRenderLayer() {
+        return RenderLayer.GRAVITY;
     }
 
-	/**
-	 * Request that this alien moved based on time elapsed
-	 * 
-	 * @param delta The time that has elapsed since last move
-	 */
-	public void move(long delta) {
-		// if we have reached the left hand side of the screen and
-		// are moving left then request a logic update 
-//		if ((dx < 0) && (x < 10)) {
-//			game.updateLogic();
-//		}
-//		// and vice vesa, if we have reached the right hand side of
-//		// the screen and are moving right, request a logic update
-//		if ((dx > 0) && (x > 750)) {
-//			game.updateLogic();
-//		}
-        game.updateLogic();
-		
-		// proceed with normal move
-		super.move(delta);
-	}
 	
 	/**
 	 * Update the game logic related to aliens
@@ -70,16 +54,11 @@ public class GravitationalGameObject extends GameObject {
 //			game.bothPlayers_notifyDeath();
 //		}
 
-        currentAngle += moveSpeed;
-        super.setRotatedAngle(currentAngle);
+        currentAngle = (currentAngle + moveSpeed * game.getSimulationStep() / Game.TUNED_STEP) % 360;
+        super.setRotatedAngle((int) currentAngle);
 	}
 	
-	/**
-	 * Notification that this alien has collided with another entity
-	 * 
-	 * @param other The other entity
-	 */
-	public void collidedWith(GameObject other) {
-		// collisions with aliens are handled elsewhere
-	}
+    protected EntityType getEntityType() {
+        return EntityType.GRAVITY;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws frames to an offscreen image, so the game can be rendered
+ * without a window (e.g. on a build machine with no display). Every
+ * so many frames can optionally be written out as a PNG to check what
+ * was drawn.
+ */
+public class HeadlessRenderBackend implements RenderBackend {
+    /** The image frames are drawn to */
+    private BufferedImage image;
+    /** The directory frames are written to, or null to not write them */
+    private File dumpDirectory;
+    /** Write every this many frames out */
+    private int dumpInterval;
+    /** The number of frames finished so far */
+    private int frames;
+
+    /**
+     * Create a backend drawing to an image of the given size
+     *
+     * @param width The width of the frames
+     * @param height The height of the frames
+     */
+    public HeadlessRenderBackend(int width, int height) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Write frames out as PNGs as they are finished
+     *
+     * @param directory The directory to write the frames to
+     * @param interval Write every this many frames, e.g. 1 for all of them
+     */
+    public void setFrameDump(File directory, int interval) {
+        directory.mkdirs();
+        this.dumpDirectory = directory;
+        this.dumpInterval = Math.max(1, interval);
+    }
+
+    public Graphics2D beginFrame() {
+        return image.createGraphics();
+    }
+
+    public void endFrame(Graphics2D g) {
+        g.dispose();
+        if (dumpDirectory != null && frames % dumpInterval == 0) {
+            try {
+                ImageIO.write(image, "png", new File(dumpDirectory, String.format("frame_%05d.png", frames)));
+            } catch (IOException e) {
+                System.err.println("Unable to write frame " + frames + ": " + e.getMessage());
+            }
+        }
+        frames++;
+    }
+
+    /**
+     * Get the image holding the last frame drawn
+     *
+     * @return The frame image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getFrameCount() {
+        return frames;
+    }
+}
@@ -0,0 +1,48 @@
+package org.newdawn.spaceinvaders;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * An audio sink that plays through a single, long lived SourceDataLine
+ * on the default sound device.
+ */
+public class LineAudioSink implements AudioSink {
+    /** The line we write our mixed audio to */
+    private SourceDataLine line;
+    /** The size of the line's buffer in bytes */
+    private int bufferBytes;
+
+    public boolean open(AudioFormat format, int bufferBytes) {
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, bufferBytes);
+        } catch (Exception e) {
+            // no sound card, or nothing that will take our format
+            line = null;
+            return false;
+        }
+        this.bufferBytes = line.getBufferSize();
+        line.start();
+        return true;
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        line.write(data, offset, length);
+    }
+
+    public boolean isStarved() {
+        // a line with nothing queued has already played out everything
+        // we gave it
+        return line.available() >= bufferBytes;
+    }
+
+    public void close() {
+        if (line != null) {
+            line.stop();
+            line.close();
+            line = null;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.newdawn.spaceinvaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A piece of music streamed from a wave file rather than decoded up
+ * front. The file is read a little at a time through a small, fixed
+ * size buffer, so however long the music is it never costs more memory
+ * than that buffer. The mixer pulls from the stream as it mixes, and the
+ * file stays open so the music can loop, stop and resume without being
+ * reopened.
+ */
+public class MusicStream {
+    /** The default size of the read buffer, about 0.4s of CD quality audio */
+    public static final int DEFAULT_BUFFER_BYTES = Integer.getInteger("asteroids.audio.musicbuffer", 64 * 1024);
+
+    /** The reference this music was opened from */
+    private String ref;
+    /** The channel the wave data is read through */
+    private FileChannel channel;
+    /** The buffer holding the data read ahead of the mixer */
+    private ByteBuffer buffer;
+    /** The offset of the first byte of sample data in the file */
+    private long dataStart;
+    /** The offset just past the last byte of sample data in the file */
+    private long dataEnd;
+    /** The number of channels in the file */
+    private int channels;
+    /** The number of bytes per sample in the file, 1 or 2 */
+    private int sampleBytes;
+    /** The number of file frames to step per mixer frame */
+    private double step;
+    /** The volume to play at */
+    private float gain = 1;
+    /** True if the music should start again when it reaches the end */
+    private boolean looping;
+    /** True if the music is currently playing */
+    private boolean playing;
+    /** True once the end of the music has been reached without looping */
+    private boolean finished;
+
+    /** How far between the current and next file frames we are */
+    private double fraction;
+    /** The current file frame, left and right */
+    private int currentLeft, currentRight;
+    /** The next file frame, left and right */
+    private int nextLeft, nextRight;
+
+    /**
+     * Open a wave file for streaming
+     *
+     * @param ref The reference to the wave file
+     * @param bufferBytes The size of the read buffer, which caps the memory used
+     * @return The stream, or null if the file could not be opened
+     */
+    public static MusicStream open(String ref, int bufferBytes) {
+        File file = new File(ref.replace('\\', File.separatorChar));
+        if (!file.exists()) {
+            System.err.println("Wave file not found: " + ref);
+            return null;
+        }
+
+        MusicStream stream = new MusicStream();
+        stream.ref = ref;
+        try {
+            stream.channel = new RandomAccessFile(file, "r").getChannel();
+            stream.readHeader();
+        } catch (IOException e) {
+            e.printStackTrace();
+            stream.close();
+            return null;
+        }
+
+        stream.buffer = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.LITTLE_ENDIAN);
+        stream.rewind();
+        return stream;
+    }
+
+    private MusicStream() {
+    }
+
+    /**
+     * Find the format and the sample data in the wave file
+     *
+     * @throws IOException Indicates the file could not be read or is not a PCM wave
+     */
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        header.limit(12);
+        channel.read(header, 0);
+        if (header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) { // "RIFF", "WAVE"
+            throw new IOException("Not a wave file: " + ref);
+        }
+
+        long position = 12;
+        int sampleRate = 0;
+        while (position + 8 <= channel.size()) {
+            header.clear().limit(8);
+            channel.read(header, position);
+            int id = header.getInt(0);
+            long size = header.getInt(4) & 0xffffffffL;
+            position += 8;
+
+            if (id == 0x20746d66) { // "fmt "
+                header.clear();
+                channel.read(header, position);
+                if (header.getShort(0) != 1) {
+                    throw new IOException("Only PCM wave files can be streamed: " + ref);
+                }
+                channels = header.getShort(2);
+                sampleRate = header.getInt(4);
+                sampleBytes = header.getShort(14) / 8;
+            }
+            else if (id == 0x61746164) { // "data"
+                dataStart = position;
+                dataEnd = Math.min(position + size, channel.size());
+                break;
+            }
+            position += size + (size & 1);
+        }
+
+        if (sampleRate == 0 || dataEnd == 0 || channels < 1 || channels > 2 || sampleBytes < 1 || sampleBytes > 2) {
+            throw new IOException("Unsupported wave format: " + ref);
+        }
+        step = sampleRate / SoundMixer.FORMAT.getSampleRate();
+    }
+
+    /**
+     * Start (or resume) playing the music through the mixer
+     */
+    public synchronized void play() {
+        if (finished) {
+            rewind();
+        }
+        playing = true;
+        SoundMixer.get().setMusic(this);
+    }
+
+    /**
+     * Pause the music, leaving it where it is so it can be resumed
+     */
+    public synchronized void pause() {
+        playing = false;
+    }
+
+    /**
+     * Stop the music and go back to the start
+     */
+    public synchronized void stop() {
+        playing = false;
+        rewind();
+    }
+
+    /**
+     * Close the underlying file. The stream can not be played again.
+     */
+    public synchronized void close() {
+        playing = false;
+        finished = true;
+        if (channel != null) {
+            try { channel.close(); } catch (IOException e) {}
+            channel = null;
+        }
+    }
+
+    public synchronized void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    public synchronized void setGain(float gain) {
+        this.gain = gain;
+    }
+
+    public synchronized boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Get the memory held by this stream
+     *
+     * @return The size in bytes of the read buffer
+     */
+    public int getBufferBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Mix the next part of the music into a buffer. Called by the mixing
+     * thread.
+     *
+     * @param mix The interleaved stereo buffer to add the music to
+     * @param length The number of samples (two per frame) to mix
+     */
+    public synchronized void mixInto(int[] mix, int length) {
+        if (!playing) {
+            return;
+        }
+        for (int i = 0; i < length; i += 2) {
+            mix[i] += (int) ((currentLeft + (nextLeft - currentLeft) * fraction) * gain);
+            mix[i + 1] += (int) ((currentRight + (nextRight - currentRight) * fraction) * gain);
+
+            fraction += step;
+            while (fraction >= 1) {
+                fraction -= 1;
+                currentLeft = nextLeft;
+                currentRight = nextRight;
+                if (!readFrame()) {
+                    playing = false;
+                    finished = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Go back to the start of the music, dropping anything read ahead
+     */
+    private void rewind() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.position(dataStart);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        buffer.clear().flip();
+        finished = false;
+        fraction = 0;
+        nextLeft = nextRight = 0;
+        readFrame();
+        currentLeft = nextLeft;
+        currentRight = nextRight;
+        readFrame();
+    }
+
+    /**
+     * Read the next frame from the file into nextLeft and nextRight,
+     * refilling the buffer if it has run dry
+     *
+     * @return False if the end of the music was reached
+     */
+    private boolean readFrame() {
+        if (buffer.remaining() < channels * sampleBytes && !fill()) {
+            return false;
+        }
+        nextLeft = readSample();
+        nextRight = channels == 2 ? readSample() : nextLeft;
+        return true;
+    }
+
+    private int readSample() {
+        if (sampleBytes == 2) {
+            return buffer.getShort();
+        }
+        return ((buffer.get() & 0xff) - 128) << 8;
+    }
+
+    /**
+     * Top the buffer up from the file, going back to the start of the
+     * data if we reach the end and are looping
+     *
+     * @return False if there was nothing left to read
+     */
+    private boolean fill() {
+        if (channel == null) {
+            return false;
+        }
+        buffer.compact();
+        try {
+            boolean wrapped = false;
+            while (buffer.hasRemaining()) {
+                long left = dataEnd - channel.position();
+                if (left <= 0) {
+                    if (!looping || wrapped) {
+                        break;
+                    }
+                    channel.position(dataStart);
+                    wrapped = true;
+                    continue;
+                }
+                int limit = buffer.limit();
+                if (left < buffer.remaining()) {
+                    buffer.limit(buffer.position() + (int) left);
+                }
+                int read = channel.read(buffer);
+                buffer.limit(limit);
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        buffer.flip();
+        return buffer.remaining() >= channels * sampleBytes;
+    }
+}
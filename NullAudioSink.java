@@ -0,0 +1,45 @@
+package org.newdawn.spaceinvaders;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An audio sink that discards everything written to it, but consumes it
+ * at the real playback rate. This lets the mixer run (and be measured)
+ * on a headless machine with no sound card.
+ */
+public class NullAudioSink implements AudioSink {
+    /** The number of bytes consumed per nanosecond of playback */
+    private double bytesPerNano;
+    /** The size of the emulated device buffer in bytes */
+    private int bufferBytes;
+    /** The time (ns) at which everything written so far will have played */
+    private long playedOutAt;
+
+    public boolean open(AudioFormat format, int bufferBytes) {
+        this.bytesPerNano = format.getFrameRate() * format.getFrameSize() / 1000000000.0;
+        this.bufferBytes = bufferBytes;
+        this.playedOutAt = System.nanoTime();
+        return true;
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        long now = System.nanoTime();
+        if (playedOutAt < now) {
+            playedOutAt = now;
+        }
+        playedOutAt += (long) (length / bytesPerNano);
+
+        // block like a real line would until the data fits in the buffer
+        long wait = playedOutAt - (long) (bufferBytes / bytesPerNano) - now;
+        if (wait > 0) {
+            try { Thread.sleep(wait / 1000000, (int) (wait % 1000000)); } catch (InterruptedException e) {}
+        }
+    }
+
+    public boolean isStarved() {
+        return playedOutAt < System.nanoTime();
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,131 @@
+package org.newdawn.spaceinvaders;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+/**
+ * Game objects that have left the game, kept to be reused rather than
+ * left for the garbage collector. Types that are created and thrown
+ * away all through a game (shots, asteroids, saucers) take a fresh
+ * object from their pool when there is one, and give objects back once
+ * they have been removed from the game.
+ * <p>
+ * A pool only keeps so many objects (its cap); any given back beyond
+ * that are dropped. Every pool created is listed in the report printed
+ * by printReport().
+ */
+public class ObjectPool<T extends GameObject> {
+    /** Every pool created, for the report */
+    private static ArrayList<ObjectPool<?>> pools = new ArrayList<ObjectPool<?>>();
+
+    /** The name of the pool, for the report */
+    private String name;
+    /** The most objects the pool keeps */
+    private int cap;
+    /** The objects waiting to be reused */
+    private ArrayList<T> free = new ArrayList<T>();
+    /** The number of objects handed out for reuse */
+    private long hits;
+    /** The number of times there was nothing to reuse */
+    private long misses;
+    /** The number of objects given back to a full pool */
+    private long dropped;
+    /** The most objects the pool has held at once */
+    private int highWater;
+
+    /**
+     * Create a pool
+     *
+     * @param name The name of the pool, for the report
+     * @param cap The most objects the pool keeps
+     */
+    public ObjectPool(String name, int cap) {
+        this.name = name;
+        this.cap = cap;
+        synchronized (pools) {
+            pools.add(this);
+        }
+    }
+
+    /**
+     * Take an object to reuse
+     *
+     * @return An object from the pool, or null if there isn't one and
+     * a new object must be created
+     */
+    public T obtain() {
+        if (free.isEmpty()) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return free.remove(free.size() - 1);
+    }
+
+    /**
+     * Give back an object that has been removed from the game. Its
+     * reset() hook is called to clear anything it holds on to, and an
+     * object the pool has no room for gives up its detached row.
+     *
+     * @param object The object to keep for reuse
+     */
+    public void free(T object) {
+        object.reset();
+        if (free.size() >= cap) {
+            dropped++;
+            object.release();
+            return;
+        }
+        free.add(object);
+        if (free.size() > highWater) {
+            highWater = free.size();
+        }
+    }
+
+    /**
+     * Set the most objects the pool keeps
+     *
+     * @param cap The cap
+     */
+    public void setCap(int cap) {
+        this.cap = cap;
+        while (free.size() > cap) {
+            free.remove(free.size() - 1).release();
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int getHighWater() {
+        return highWater;
+    }
+
+    /**
+     * Get a one line summary of the pool statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        return name + " pool: " + free.size() + " free of " + cap + ", " + hits + " hits, " + misses
+                + " misses, high water " + highWater + ", " + dropped + " dropped";
+    }
+
+    /**
+     * Print the statistics of every pool
+     *
+     * @param out The stream to print to
+     */
+    public static void printReport(PrintStream out) {
+        synchronized (pools) {
+            for (ObjectPool<?> pool : pools) {
+                out.println(pool.getStatistics());
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * A piece of the display (the HUD, the title screen, a message) that
+ * is drawn into an image of its own and only redrawn when something it
+ * shows has changed. The rest of the time drawing it is a single blit.
+ * <p>
+ * A layer says what it depends on by calling watch() with each value
+ * from update(), which is called every frame. If any value differs from
+ * the last frame, render() is called to redraw the cached image.
+ */
+public abstract class OverlayLayer {
+    /** The most values a layer can watch */
+    private static final int MAX_WATCHED = 32;
+
+    /** The cached image of this layer */
+    private BufferedImage image;
+    /** The numeric values seen last frame */
+    private long[] numbers = new long[MAX_WATCHED];
+    /** The object values seen last frame */
+    private Object[] objects = new Object[MAX_WATCHED];
+    /** True if the layer must be redrawn before it is next drawn */
+    private boolean dirty = true;
+    /** The font text is drawn in, taken from the context the layer is drawn to */
+    private Font font;
+    /** Check for changes every this many draws */
+    private int updateInterval = 1;
+    /** The number of draws since changes were last checked for */
+    private int sinceUpdate;
+    /** The number of times the layer has been redrawn */
+    private long renders;
+    /** The number of times the layer has been drawn */
+    private long draws;
+
+    /**
+     * Create a new layer
+     *
+     * @param width The width of the layer in pixels
+     * @param height The height of the layer in pixels
+     */
+    protected OverlayLayer(int width, int height) {
+        image = Sprite.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Called every frame before drawing. Implementations call watch()
+     * with each value the layer shows.
+     */
+    protected abstract void update();
+
+    /**
+     * Redraw the layer. The image has been cleared to transparent.
+     *
+     * @param g The graphics context of the layer's image
+     */
+    protected abstract void render(Graphics2D g);
+
+    /**
+     * Note the current value of something this layer shows, marking the
+     * layer dirty if it has changed
+     *
+     * @param slot The slot the value is kept in, unique within the layer
+     * @param value The current value
+     */
+    protected void watch(int slot, long value) {
+        if (numbers[slot] != value) {
+            numbers[slot] = value;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Note the current value of something this layer shows, marking the
+     * layer dirty if it has changed
+     *
+     * @param slot The slot the value is kept in, unique within the layer
+     * @param value The current value
+     */
+    protected void watch(int slot, Object value) {
+        Object last = objects[slot];
+        if (last == null ? value != null : !last.equals(value)) {
+            objects[slot] = value;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Note the current value of something this layer shows, marking the
+     * layer dirty if it has changed
+     *
+     * @param slot The slot the value is kept in, unique within the layer
+     * @param value The current value
+     */
+    protected void watch(int slot, boolean value) {
+        watch(slot, value ? 1L : 0L);
+    }
+
+    /**
+     * Bring the layer up to date with what it shows and check whether
+     * it will be redrawn next time it is drawn
+     *
+     * @return True if anything the layer shows has changed
+     */
+    public boolean hasChanged() {
+        update();
+        return dirty;
+    }
+
+    /**
+     * Set how often the layer checks for changes when drawn. Checking
+     * less often means changes show up late but the layer is redrawn
+     * less.
+     *
+     * @param interval Check every this many draws, 1 being every draw
+     */
+    public void setUpdateInterval(int interval) {
+        updateInterval = Math.max(1, interval);
+    }
+
+    /**
+     * Force the layer to be redrawn next time it is drawn
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Draw the layer, redrawing its cached image first if anything it
+     * shows has changed
+     *
+     * @param g The graphics context to draw to
+     * @param x The x location to draw the layer at
+     * @param y The y location to draw the layer at
+     */
+    public void draw(Graphics g, int x, int y) {
+        if (font == null || !font.equals(g.getFont())) {
+            font = g.getFont();
+            dirty = true;
+        }
+
+        if (++sinceUpdate >= updateInterval) {
+            update();
+            sinceUpdate = 0;
+        }
+        if (dirty) {
+            Graphics2D ig = image.createGraphics();
+            ig.setComposite(AlphaComposite.Clear);
+            ig.fillRect(0, 0, image.getWidth(), image.getHeight());
+            ig.setComposite(AlphaComposite.SrcOver);
+            ig.setFont(font);
+            ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            render(ig);
+            ig.dispose();
+            dirty = false;
+            renders++;
+        }
+        draws++;
+        g.drawImage(image, x, y, null);
+    }
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Get the number of times the layer has been redrawn
+     *
+     * @return The number of redraws
+     */
+    public long getRenders() {
+        return renders;
+    }
+
+    /**
+     * Get the number of times the layer has been drawn
+     *
+     * @return The number of draws
+     */
+    public long getDraws() {
+        return draws;
+    }
+}
@@ -0,0 +1,128 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * Watches how long frames take against a budget and picks a rendering
+ * quality level to keep within it. When frames run long for a while the
+ * level steps down; once they have been comfortably quick for longer
+ * still it steps back up, so the quality doesn't flicker between two
+ * levels on a borderline machine.
+ * <p>
+ * What each level means is up to the game; level 0 is full quality and
+ * each level above gives up a little more.
+ */
+public class QualityGovernor {
+    /** The number of quality levels */
+    public static final int LEVELS = 4;
+    /** The number of long frames in a row before stepping down */
+    private static final int DOWN_FRAMES = 30;
+    /** The number of quick frames in a row before stepping up */
+    private static final int UP_FRAMES = 180;
+    /** The fraction of the budget a frame must be under to count as quick */
+    private static final double UP_FRACTION = 0.6;
+    /** The weight given to each new frame in the smoothed frame time */
+    private static final double SMOOTHING = 0.1;
+
+    /** The time a frame may take (ns) */
+    private long budget;
+    /** The current quality level, 0 being full quality */
+    private int level;
+    /** The frame time, smoothed over the last few frames (ns) */
+    private double smoothed;
+    /** The number of long frames in a row */
+    private int longFrames;
+    /** The number of quick frames in a row */
+    private int quickFrames;
+    /** The time spent at each level (ns) */
+    private long[] timeAtLevel = new long[LEVELS];
+    /** The time (from System.nanoTime()) the last frame was recorded, or 0 before the first */
+    private long lastRecord;
+    /** The number of times the level has changed */
+    private int changes;
+
+    /**
+     * Create a governor for a frame budget
+     *
+     * @param budget The time a frame may take in nanoseconds
+     */
+    public QualityGovernor(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Record the time a frame took, changing the quality level if need be
+     *
+     * @param nanos The time the frame took in nanoseconds
+     * @return True if the quality level changed
+     */
+    public boolean record(long nanos) {
+        long now = System.nanoTime();
+        if (lastRecord != 0) {
+            timeAtLevel[level] += now - lastRecord;
+        }
+        lastRecord = now;
+        smoothed = smoothed == 0 ? nanos : smoothed + (nanos - smoothed) * SMOOTHING;
+
+        if (smoothed > budget) {
+            longFrames++;
+            quickFrames = 0;
+        } else if (smoothed < budget * UP_FRACTION) {
+            quickFrames++;
+            longFrames = 0;
+        } else {
+            longFrames = 0;
+            quickFrames = 0;
+        }
+
+        if (longFrames >= DOWN_FRAMES && level < LEVELS - 1) {
+            return setLevel(level + 1);
+        }
+        if (quickFrames >= UP_FRAMES && level > 0) {
+            return setLevel(level - 1);
+        }
+        return false;
+    }
+
+    private boolean setLevel(int level) {
+        this.level = level;
+        longFrames = 0;
+        quickFrames = 0;
+        changes++;
+        return true;
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Get the current quality level
+     *
+     * @return The level, 0 being full quality
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the time spent at a quality level
+     *
+     * @param level The level
+     * @return The time in nanoseconds
+     */
+    public long getTimeAtLevel(int level) {
+        return timeAtLevel[level];
+    }
+
+    /**
+     * Get a one line summary of the governor statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        StringBuilder result = new StringBuilder("quality: level " + level + ", " + changes + " changes, time at each level");
+        for (int i = 0; i < LEVELS; i++) {
+            result.append(i == 0 ? " " : "/").append(timeAtLevel[i] / 1000000).append("ms");
+        }
+        return result.toString();
+    }
+}
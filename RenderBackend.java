@@ -0,0 +1,25 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+
+/**
+ * The surface the game draws its frames to. Normally this is the page
+ * flipped window, but frames can equally be drawn to an offscreen image
+ * so the renderer can be run and measured without a display.
+ */
+public interface RenderBackend {
+    /**
+     * Get a graphics context to draw the next frame with
+     *
+     * @return The graphics context for the next frame
+     */
+    public Graphics2D beginFrame();
+
+    /**
+     * Finish the frame drawn with a context from beginFrame() and show
+     * it (or otherwise dispose of it)
+     *
+     * @param g The graphics context the frame was drawn with
+     */
+    public void endFrame(Graphics2D g);
+}
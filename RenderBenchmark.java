@@ -0,0 +1,192 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.io.File;
+
+/**
+ * Runs the game's renderer offscreen and reports how fast it draws, so
+ * changes to rendering can be measured without a display. Run with:
+ * <pre>
+ * java org.newdawn.spaceinvaders.RenderBenchmark [asteroids] [frames] [dump directory]
+ * </pre>
+ * The game is started with the given number of extra asteroids, and
+ * without the players' ships so nothing can end it, and three things
+ * are timed: a single Sprite.draw(), drawing a frame on
+ * its own, and a whole frame (moving, collisions and drawing). Frames
+ * are timed redrawn in full and then with dirty rectangles. Finally the
+ * simulation is timed with frames drawn on a render thread, along with
+ * the latency from each update to its frame being shown. Each timing
+ * checks the world was still moving, so no figure comes from a game
+ * that had ended.
+ */
+public class RenderBenchmark {
+    /** The number of frames run before timing starts, to warm the JIT up */
+    private static final int WARMUP_FRAMES = 200;
+
+    /**
+     * The entry point of the benchmark
+     *
+     * @param argv The number of asteroids, the number of frames and
+     * optionally a directory to write every 100th frame to
+     */
+    public static void main(String argv[]) {
+        System.setProperty("java.awt.headless", "true");
+        int asteroids = argv.length > 0 ? Integer.parseInt(argv[0]) : 200;
+        int frames = argv.length > 1 ? Integer.parseInt(argv[1]) : 1000;
+
+        HeadlessRenderBackend backend = new HeadlessRenderBackend(800, 600);
+        if (argv.length > 2) {
+            backend.setFrameDump(new File(argv[2]), 100);
+        }
+
+        Game game = new Game(backend);
+
+        benchmarkSprite(frames * 100);
+        startGame(game, asteroids);
+        benchmarkDraw(game, backend, frames);
+        startGame(game, asteroids);
+        benchmarkFrame(game, backend, frames);
+
+        // the same again, only repainting what has changed
+        game.setDirtyRendering(true);
+        startGame(game, asteroids);
+        benchmarkDraw(game, backend, frames);
+        // a fresh renderer, so its figures are for moving frames only
+        game.setDirtyRendering(true);
+        startGame(game, asteroids);
+        benchmarkFrame(game, backend, frames);
+        System.out.println(game.getDirtyRenderer().getStatistics());
+        game.setDirtyRendering(false);
+
+        // and with the simulation and drawing on threads of their own
+        startGame(game, asteroids);
+        benchmarkThreaded(game, backend, frames);
+
+        System.out.println(RotatedSpriteCache.get().getStatistics());
+        System.exit(0);
+    }
+
+    /**
+     * Start a fresh game with extra asteroids at random places, moving
+     * in random directions. The players' ships are taken out, so they
+     * can't be killed and end the game part of the way through, and the
+     * extra asteroids count towards the level so a saucer destroying
+     * the first few doesn't end it either.
+     */
+    private static void startGame(Game game, int asteroids) {
+        game.beginPlay();
+        if (game.getP1Ship() != null) {
+            game.removeEntity(game.getP1Ship());
+        }
+        if (game.getP2Ship() != null) {
+            game.removeEntity(game.getP2Ship());
+        }
+        for (int i = 0; i < asteroids; i++) {
+            String ref = i % 2 == 0 ? "sprites\\Asteroid1.png" : "sprites\\SmallAsteroid1.png";
+            game.addAsteroid(AsteroidGameObject.create(game, ref, (int) (Math.random() * 800),
+                    (int) (Math.random() * 600), (int) (Math.random() * 360), i % 2 == 0, 1));
+        }
+        game.updateWorld(10);
+    }
+
+    /**
+     * Time drawing one sprite over and over, upright and rotated
+     */
+    private static void benchmarkSprite(int draws) {
+        HeadlessRenderBackend target = new HeadlessRenderBackend(800, 600);
+        Sprite sprite = SpriteStore.get().getSprite("sprites\\Asteroid1.png");
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean rotated = pass == 1;
+            Graphics2D g = target.beginFrame();
+            for (int i = 0; i < draws / 10; i++) {
+                draw(sprite, g, i, rotated);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < draws; i++) {
+                draw(sprite, g, i, rotated);
+            }
+            long time = System.nanoTime() - start;
+            target.endFrame(g);
+            System.out.println("Sprite.draw" + (rotated ? " (rotated)" : "") + ": "
+                    + (time / draws) + "ns per draw over " + draws + " draws");
+        }
+    }
+
+    private static void draw(Sprite sprite, Graphics2D g, int i, boolean rotated) {
+        int x = (i * 37) % 760;
+        int y = (i * 53) % 560;
+        if (rotated) {
+            sprite.draw(g, x, y, (i * 7) % 360);
+        } else {
+            sprite.draw(g, x, y);
+        }
+    }
+
+    /**
+     * Time drawing frames without moving anything
+     */
+    private static void benchmarkDraw(Game game, HeadlessRenderBackend backend, int frames) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            drawFrame(game, backend);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            drawFrame(game, backend);
+        }
+        report("draw only", game, frames, System.nanoTime() - start);
+        System.out.println(game.getRenderQueue().getStatistics());
+    }
+
+    /**
+     * Time whole frames: moving, collisions, logic and drawing
+     */
+    private static void benchmarkFrame(Game game, HeadlessRenderBackend backend, int frames) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            game.updateWorld(10);
+            drawFrame(game, backend);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            game.updateWorld(10);
+            drawFrame(game, backend);
+        }
+        report("full frame", game, frames, System.nanoTime() - start);
+    }
+
+    /**
+     * Time the simulation with drawing handed to a render thread
+     */
+    private static void benchmarkThreaded(Game game, HeadlessRenderBackend backend, int frames) {
+        game.startRenderThread();
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            game.updateWorld(10);
+            game.publishSnapshot();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            game.updateWorld(10);
+            game.publishSnapshot();
+            Thread.yield();
+        }
+        report("simulation, render thread", game, frames, System.nanoTime() - start);
+        System.out.println(game.getRenderThread().getStatistics());
+        game.stopRenderThread();
+    }
+
+    private static void drawFrame(Game game, HeadlessRenderBackend backend) {
+        Graphics2D g = backend.beginFrame();
+        game.drawFrame(g);
+        backend.endFrame(g);
+    }
+
+    private static void report(String name, Game game, int frames, long time) {
+        if (!game.isPlaying()) {
+            System.out.println(name + ": the game ended, so the world stopped moving");
+            System.exit(1);
+        }
+        double ms = time / 1000000.0 / frames;
+        System.out.println(name + ": " + game.getGameObjects().size() + " objects, "
+                + Math.round(ms * 1000) / 1000.0 + "ms per frame, " + Math.round(1000 / ms) + " fps");
+    }
+}
@@ -0,0 +1,39 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.RenderingHints;
+
+/**
+ * The layers the game draws in, from the back to the front. Everything
+ * in a layer is drawn with the same rendering state, so the state only
+ * has to be set up when drawing moves on to the next layer.
+ */
+public enum RenderLayer {
+    /** Gravity wells, under everything else */
+    GRAVITY(AlphaComposite.SrcOver, RenderingHints.VALUE_ANTIALIAS_ON),
+    /** Asteroids of all sizes */
+    ASTEROID(AlphaComposite.SrcOver, RenderingHints.VALUE_ANTIALIAS_ON),
+    /** Player ships, aliens and saucers */
+    SHIP(AlphaComposite.SrcOver, RenderingHints.VALUE_ANTIALIAS_ON),
+    /** Shots fired by players and aliens, on top of everything */
+    SHOT(AlphaComposite.SrcOver, RenderingHints.VALUE_ANTIALIAS_ON);
+
+    /** The way sprites in this layer are blended with what is under them */
+    private final Composite composite;
+    /** The antialiasing hint sprites in this layer are drawn with */
+    private final Object antialiasing;
+
+    private RenderLayer(Composite composite, Object antialiasing) {
+        this.composite = composite;
+        this.antialiasing = antialiasing;
+    }
+
+    public Composite getComposite() {
+        return composite;
+    }
+
+    public Object getAntialiasing() {
+        return antialiasing;
+    }
+}
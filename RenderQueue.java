@@ -0,0 +1,164 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.util.Arrays;
+
+/**
+ * The sprites to be drawn this frame. Rather than drawing each game
+ * object as the list is walked, draws are recorded here and then sorted
+ * by layer and by sprite before being carried out. Draws of the same
+ * sprite then follow one another (reading from the same cached frames
+ * and atlas pages), and the rendering state is only changed when the
+ * layer does, rather than around every draw.
+ */
+public class RenderQueue {
+    /** The number of bits of a sort key holding the draw's index */
+    private static final int INDEX_BITS = 20;
+    /** The mask for the index in a sort key */
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    /** The sprite of each draw */
+    private Sprite[] sprites = new Sprite[64];
+    /** The x location of each draw */
+    private int[] xs = new int[64];
+    /** The y location of each draw */
+    private int[] ys = new int[64];
+    /** The angle of each draw */
+    private int[] angles = new int[64];
+    /** The layer of each draw */
+    private RenderLayer[] layers = new RenderLayer[64];
+    /** The keys draws are sorted by: layer, then sprite, then the order they came in */
+    private long[] keys = new long[64];
+    /** The number of draws recorded */
+    private int count;
+
+    /** True if layers may use antialiasing, false to always draw without it */
+    private boolean antialiasing = true;
+
+    /** The number of sprites drawn last frame */
+    private int drawCalls;
+    /** The number of runs of the same sprite and layer drawn last frame */
+    private int batches;
+    /** The number of changes of rendering state made last frame */
+    private int stateChanges;
+
+    /**
+     * Record a sprite to be drawn
+     *
+     * @param sprite The sprite to draw
+     * @param x The x location to draw the sprite at
+     * @param y The y location to draw the sprite at
+     * @param angle The angle the sprite is rotated to
+     * @param layer The layer to draw the sprite in
+     */
+    public void add(Sprite sprite, int x, int y, int angle, RenderLayer layer) {
+        if (count == sprites.length) {
+            sprites = Arrays.copyOf(sprites, count * 2);
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            angles = Arrays.copyOf(angles, count * 2);
+            layers = Arrays.copyOf(layers, count * 2);
+            keys = Arrays.copyOf(keys, count * 2);
+        }
+        sprites[count] = sprite;
+        xs[count] = x;
+        ys[count] = y;
+        angles[count] = angle;
+        layers[count] = layer;
+        keys[count] = ((long) layer.ordinal() << 52) | ((sprite.getId() & 0xFFFFFFFFL) << INDEX_BITS) | count;
+        count++;
+    }
+
+    /**
+     * Draw everything recorded, sorted by layer and sprite, and empty
+     * the queue ready for the next frame
+     *
+     * @param g The graphics context to draw to
+     */
+    public void flush(Graphics2D g) {
+        drawCalls = 0;
+        batches = 0;
+        stateChanges = 0;
+
+        Arrays.sort(keys, 0, count);
+        RenderLayer layer = null;
+        Sprite sprite = null;
+        for (int i = 0; i < count; i++) {
+            int index = (int) (keys[i] & INDEX_MASK);
+            if (layers[index] != layer || sprites[index] != sprite) {
+                if (layers[index] != layer) {
+                    layer = layers[index];
+                    applyState(g, layer);
+                }
+                sprite = sprites[index];
+                batches++;
+            }
+            sprite.draw(g, xs[index], ys[index], angles[index]);
+            drawCalls++;
+        }
+
+        Arrays.fill(sprites, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Set up the rendering state for a layer, only changing what differs
+     */
+    private void applyState(Graphics2D g, RenderLayer layer) {
+        if (!layer.getComposite().equals(g.getComposite())) {
+            g.setComposite(layer.getComposite());
+            stateChanges++;
+        }
+        Object hint = antialiasing ? layer.getAntialiasing() : RenderingHints.VALUE_ANTIALIAS_OFF;
+        if (hint != g.getRenderingHint(RenderingHints.KEY_ANTIALIASING)) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, hint);
+            stateChanges++;
+        }
+    }
+
+    /**
+     * Allow or stop layers drawing with antialiasing
+     *
+     * @param antialiasing False to always draw without antialiasing
+     */
+    public void setAntialiasing(boolean antialiasing) {
+        this.antialiasing = antialiasing;
+    }
+
+    /**
+     * Get the number of sprites drawn last frame
+     *
+     * @return The number of draw calls
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * Get the number of runs of the same sprite drawn last frame
+     *
+     * @return The number of batches
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * Get the number of changes of rendering state made last frame
+     *
+     * @return The number of state changes
+     */
+    public int getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * Get a one line summary of the last frame's counters
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        return "render queue: " + drawCalls + " draws in " + batches + " batches, " + stateChanges + " state changes";
+    }
+}
@@ -0,0 +1,131 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws frames on a thread of its own, so drawing overlaps with the
+ * simulation rather than holding it up. The simulation publishes a
+ * snapshot of the world after each update; this thread draws the newest
+ * one it finds and sleeps when there is nothing new to draw.
+ * <p>
+ * The latency of each frame, from the snapshot being taken to the frame
+ * being shown, is recorded, as is the time spent drawing it so the
+ * game can keep frames within budget.
+ */
+public class RenderThread extends Thread {
+    /** The longest to wait for a new snapshot before checking again (ns) */
+    private static final long IDLE_WAIT = 2000000;
+
+    /** The game whose snapshots are drawn */
+    private Game game;
+    /** The surface frames are drawn to */
+    private RenderBackend backend;
+    /** The snapshots handed over by the simulation */
+    private TripleBuffer<WorldSnapshot> snapshots;
+    /** True while the thread should keep drawing */
+    private volatile boolean running = true;
+
+    /** The number of frames shown */
+    private volatile long frames;
+    /** The latency of the last frame shown (ns) */
+    private volatile long lastLatency;
+    /** The total latency of the frames shown (ns) */
+    private volatile long totalLatency;
+    /** The longest latency of a frame shown (ns) */
+    private volatile long maxLatency;
+    /** The time taken to draw the last frame shown (ns) */
+    private volatile long lastFrameTime;
+
+    /**
+     * Create a thread drawing a game's snapshots
+     *
+     * @param game The game whose snapshots are drawn
+     * @param backend The surface frames are drawn to
+     * @param snapshots The snapshots handed over by the simulation
+     */
+    public RenderThread(Game game, RenderBackend backend, TripleBuffer<WorldSnapshot> snapshots) {
+        super("Render");
+        setDaemon(true);
+        this.game = game;
+        this.backend = backend;
+        this.snapshots = snapshots;
+    }
+
+    public void run() {
+        while (running) {
+            if (!snapshots.update()) {
+                LockSupport.parkNanos(this, IDLE_WAIT);
+                continue;
+            }
+
+            WorldSnapshot snapshot = snapshots.getFront();
+            long start = System.nanoTime();
+            Graphics2D g = backend.beginFrame();
+            game.drawSnapshot(g, snapshot);
+            backend.endFrame(g);
+
+            long end = System.nanoTime();
+            lastFrameTime = end - start;
+            long latency = end - snapshot.getSimulationTime();
+            lastLatency = latency;
+            totalLatency += latency;
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
+            frames++;
+        }
+    }
+
+    /**
+     * Wake the thread up to draw a snapshot just published
+     */
+    public void wake() {
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Stop drawing and wait for the thread to finish
+     */
+    public void shutdown() {
+        running = false;
+        wake();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Get the time taken to draw the last frame shown
+     *
+     * @return The time in nanoseconds
+     */
+    public long getLastFrameTime() {
+        return lastFrameTime;
+    }
+
+    /**
+     * Get the average time from a snapshot being taken to it being shown
+     *
+     * @return The average latency in nanoseconds
+     */
+    public long getAverageLatency() {
+        return frames == 0 ? 0 : totalLatency / frames;
+    }
+
+    /**
+     * Get a one line summary of the thread's statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        return "render thread: " + frames + " frames, latency last " + lastLatency / 1000 + "us, average "
+                + getAverageLatency() / 1000 + "us, max " + maxLatency / 1000 + "us";
+    }
+}
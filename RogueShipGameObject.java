@@ -4,13 +4,18 @@ package org.newdawn.spaceinvaders;
 public class RogueShipGameObject extends GameObject {
 	/** The speed at which the alient moves horizontally */
 	private double moveSpeed = 75;
+	/** The time between the hover sound starting over (ms) */
+	private static final int HOVER_SOUND_INTERVAL = 2000;
 	/** The game in which the entity exists */
 	private Game game;
+    /** The time between shots (ms) */
     private int shotTimer;
-    private int counter;
+    /** The time since the last shot (ms) */
+    private long counter;
     private int currentAngle;
-    private int hoverSoundTimer;
-    private AePlayWave aulink;
+    /** The time until the hover sound is started over (ms) */
+    private long hoverSoundTimer;
+    private int hoverSound;
 
 	/**
 	 * Create a new alien entity
@@ -19,6 +24,7 @@ public class RogueShipGameObject extends GameObject {
 	 * @param ref The sprite which should be displayed for this alien
 	 * @param x The intial x location of this alien
 	 * @param y The intial y location of this alient
+	 * @param shotTimer The time between shots (ms)
 	 */
 	public RogueShipGameObject(Game game, String ref, int x, int y, int currentAngle, int currentLevel, int shotTimer) {
 		super(ref,x,y);
@@ -31,35 +37,16 @@ public class RogueShipGameObject extends GameObject {
         setHorizontalMovement(Math.sin(Math.toRadians((double)currentAngle))*moveSpeed);
         setVerticalMovement(Math.cos(Math.toRadians((double)currentAngle))*moveSpeed);
 //		dx = -moveSpeed;
-        aulink = null;
+        hoverSound = -1;
 	}
 
-	/**
-	 * Request that this alien moved based on time elapsed
-	 * 
-	 * @param delta The time that has elapsed since last move
-	 */
-	public void move(long delta) {
-		// if we have reached the left hand side of the screen and
-		// are moving left then request a logic update 
-//		if ((dx < 0) && (x < 10)) {
-//			game.updateLogic();
-//		}
-//		// and vice vesa, if we have reached the right hand side of
-//		// the screen and are moving right, request a logic update
-//		if ((dx > 0) && (x > 750)) {
-//			game.updateLogic();
-//		}
-		game.updateLogic();
-		// proceed with normal move
-		super.move(delta);
-	}
 	
 	/**
 	 * Update the game logic related to aliens
 	 */
 	public void doLogic() {
-        if (counter == shotTimer)
+        long delta = game.getSimulationStep();
+        if (counter >= shotTimer)
         {
             ShipGameObject playerShip = (ShipGameObject)game.getP1Ship();
 //            int xDiff = getX() - playerShip.getX();
@@ -98,21 +85,20 @@ public class RogueShipGameObject extends GameObject {
 
 
             //System.out.println("xDiff = " + xDiff + " yDiff = " + yDiff + "angleToShip = " + angleToShip);
-            ShotGameObject shot = new ShotGameObject(game,"sprites\\EnemyBullet.png",getX()+getWidth()/2-3,getY()+getHeight()/2-3, angleToShip, 100, 100, "alien", 100);
-            new AePlayWave("sounds\\aliengun.wav", 1).start();
-            game.getGameObjects().add(shot);
+            ShotGameObject shot = ShotGameObject.create(game,"sprites\\EnemyBullet.png",getX()+getWidth()/2-3,getY()+getHeight()/2-3, angleToShip, 100, 100, "alien", 100);
+            SoundMixer.get().trigger("sounds\\aliengun.wav", SoundCategory.WEAPON, SoundMixer.QUIET, 0);
+            game.addEntity(shot);
             counter = 0;
         }
         else
-            counter++;
+            counter += delta;
 
-        if (hoverSoundTimer == 0) {
-            aulink = new AePlayWave("sounds\\asteroids_saucer.wav");
-            aulink.start();
-            hoverSoundTimer = 200;
+        if (hoverSoundTimer <= 0) {
+            hoverSound = SoundMixer.get().play("sounds\\asteroids_saucer.wav", SoundCategory.AMBIENT, 1, 0);
+            hoverSoundTimer = HOVER_SOUND_INTERVAL;
         }
         else
-            hoverSoundTimer--;
+            hoverSoundTimer -= delta;
 		// swap over horizontal movement and move down the
 		// screen a bit
 //		dx = -dx;
@@ -127,17 +113,10 @@ public class RogueShipGameObject extends GameObject {
 	}
 
     public void stopMusic() {
-        if (aulink != null)
-            aulink.stopMusic();
+        SoundMixer.get().stop(hoverSound);
     }
 	
-	/**
-	 * Notification that this alien has collided with another entity
-	 * 
-	 * @param other The other entity
-	 */
-	public void collidedWith(GameObject other) {
-
-		// collisions with aliens are handled elsewhere
-	}
+    protected EntityType getEntityType() {
+        return EntityType.ROGUE_SHIP;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,212 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of sprites pre-rendered at fixed angles. Rotating a sprite
+ * every time it is drawn means a new transform and a filtered fill per
+ * object per frame; with this cache a rotated sprite is rendered once
+ * per angle step and then drawn with a single blit.
+ * <p>
+ * Angles are rounded to the nearest step (2 degrees unless the
+ * "asteroids.rotation.step" property says otherwise) and the least
+ * recently used frames are thrown away once the cache goes over its
+ * memory budget. Frames are kept per step, so switching between steps
+ * (as the rendering quality changes) doesn't throw away the frames
+ * of the other step.
+ * <p>
+ * Frames are packed into the texture atlas the sprites themselves are
+ * in (see SpriteStore), so drawing rotated sprites mostly reads from a
+ * few shared images.
+ * <p>
+ * [singleton]
+ */
+public class RotatedSpriteCache {
+    /** The single instance of this class */
+    private static RotatedSpriteCache single = new RotatedSpriteCache();
+
+    /**
+     * Get the single instance of this class
+     *
+     * @return The single instance of this class
+     */
+    public static RotatedSpriteCache get() {
+        return single;
+    }
+
+    /** The angle (in degrees) between pre-rendered frames */
+    private int step = Integer.getInteger("asteroids.rotation.step", 2);
+    /** The most memory (in bytes) the cached frames may take up */
+    private long budget = Long.getLong("asteroids.rotation.budget", 16 * 1024 * 1024);
+    /** The cached frames, least recently used first */
+    private LinkedHashMap<Long, AtlasRegion> frames = new LinkedHashMap<Long, AtlasRegion>(256, 0.75f, true);
+    /** The atlas frames are packed into, or null if each frame has an image of its own */
+    private TextureAtlas atlas;
+    /** The memory (in bytes) taken up by the cached frames */
+    private long bytes;
+    /** The number of draws served from the cache */
+    private long hits;
+    /** The number of draws that had to render a new frame */
+    private long misses;
+
+    /**
+     * Set the angle between pre-rendered frames. Frames already rendered
+     * at other steps stay in the cache (until they are the least
+     * recently used), ready for the step to be changed back.
+     *
+     * @param step The step in degrees, e.g. 1, 2 or 5
+     */
+    public synchronized void setStep(int step) {
+        if (step < 1) {
+            return;
+        }
+        this.step = step;
+    }
+
+    public synchronized int getStep() {
+        return step;
+    }
+
+    /**
+     * Set the atlas frames rendered from now on are packed into
+     *
+     * @param atlas The atlas to use, or null to give each frame an image of its own
+     */
+    public synchronized void setAtlas(TextureAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Set the most memory the cached frames may take up
+     *
+     * @param budget The budget in bytes
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Get a sprite rotated to (the nearest step to) an angle, rendering
+     * it if it is not in the cache. The frame is square and centered on
+     * the sprite's center, so it is as big as the sprite's diagonal.
+     *
+     * @param sprite The sprite to rotate
+     * @param image The image of the sprite
+     * @param angle The angle in degrees, clockwise
+     * @return The rotated frame
+     */
+    public synchronized AtlasRegion getFrame(Sprite sprite, BufferedImage image, int angle) {
+        int steps = (360 + step - 1) / step;
+        int index = Math.round((float) (((angle % 360) + 360) % 360) / step) % steps;
+        Long key = Long.valueOf(((long) sprite.getId() << 32) | ((long) step << 16) | index);
+
+        AtlasRegion frame = frames.get(key);
+        if (frame != null) {
+            hits++;
+            return frame;
+        }
+
+        misses++;
+        BufferedImage rendered = render(image, index * step);
+        frame = atlas != null ? atlas.add(rendered) : new AtlasRegion(rendered);
+        frames.put(key, frame);
+        bytes += frameBytes(frame);
+        evict();
+        return frame;
+    }
+
+    /**
+     * Render every frame of a sprite now, rather than as each angle is
+     * first drawn
+     *
+     * @param sprite The sprite to rotate
+     * @param image The image of the sprite
+     */
+    public synchronized void prerender(Sprite sprite, BufferedImage image) {
+        for (int angle = 0; angle < 360; angle += step) {
+            getFrame(sprite, image, angle);
+        }
+    }
+
+    /**
+     * Render an image rotated about its center
+     *
+     * @param image The image to rotate
+     * @param angle The angle in degrees, clockwise
+     * @return The rotated image
+     */
+    static BufferedImage render(BufferedImage image, int angle) {
+        int size = (int) Math.ceil(Math.hypot(image.getWidth(), image.getHeight()));
+        BufferedImage frame = Sprite.createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+
+        Graphics2D g = frame.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.rotate(Math.toRadians(angle), size / 2.0, size / 2.0);
+        g.drawImage(image, (size - image.getWidth()) / 2, (size - image.getHeight()) / 2, null);
+        g.dispose();
+        return frame;
+    }
+
+    private static long frameBytes(AtlasRegion frame) {
+        return (long) frame.getWidth() * frame.getHeight() * 4;
+    }
+
+    /**
+     * Give the space used by a frame back to the atlas
+     */
+    private void release(AtlasRegion frame) {
+        if (atlas != null) {
+            atlas.free(frame);
+        }
+    }
+
+    /**
+     * Throw away the least recently used frames until we are within budget
+     */
+    private void evict() {
+        Iterator<Map.Entry<Long, AtlasRegion>> i = frames.entrySet().iterator();
+        while (bytes > budget && i.hasNext()) {
+            AtlasRegion frame = i.next().getValue();
+            bytes -= frameBytes(frame);
+            release(frame);
+            i.remove();
+        }
+    }
+
+    /**
+     * Get the fraction of draws served from the cache
+     *
+     * @return The hit rate between 0 and 1
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Get the memory taken up by the cached frames
+     *
+     * @return The size of the cache in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get a one line summary of the cache statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public synchronized String getStatistics() {
+        return "rotation cache: " + frames.size() + " frames, " + (bytes / 1024) + "KB, hit rate "
+                + Math.round(getHitRate() * 1000) / 10.0 + "% (" + hits + " hits, " + misses + " misses)";
+    }
+}
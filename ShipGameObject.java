@@ -21,62 +21,69 @@ public class ShipGameObject extends GameObject {
 		this.playerTag = playerTag;
 		this.game = game;
 	}
-	
-	/**
-	 * Request that the ship move itself based on an elapsed ammount of
-	 * time
-	 * 
-	 * @param delta The time that has elapsed since last move (ms)
-	 */
-	public void move(long delta) {
-		super.move(delta);
-	}
 
     public void changeAccel (double xAccel, double yAccel)
     {
-        incrementdxdyCordCountXY("dx", new Double(xAccel));
-        incrementdxdyCordCountXY("dy", new Double(yAccel));
+        setHorizontalMovement(getHorizontalMovement() + xAccel);
+        setVerticalMovement(getVerticalMovement() + yAccel);
 //        this.dx += xAccel;
 //        this.dy += yAccel;
     }
 	
+    protected EntityType getEntityType() {
+        return EntityType.SHIP;
+    }
+
 	/**
-	 * Notification that the player's ship has collided with something
+	 * Notification that the player's ship has hit an asteroid, which
+	 * kills the player and destroys the asteroid
 	 * 
-	 * @param other The entity with which the ship has collided
+	 * @param asteroid The asteroid the ship hit
 	 */
-	public void collidedWith(GameObject other) {
-		// if its an alien, notify the game that the player
-		// is dead
-        if (other instanceof AsteroidGameObject) {
-            if (((AsteroidGameObject) other).isBig()) {
-                game.notifyDeath(playerTag);
-                game.removeEntity(other);
-                game.bigAsteroidDestroyed(other);
-                game.notifyAsteroidKilled();
+	public void hitAsteroid(AsteroidGameObject asteroid) {
+        if (asteroid.isBig()) {
+            game.notifyDeath(playerTag);
+            game.removeEntity(asteroid);
+            game.bigAsteroidDestroyed(asteroid);
+            game.notifyAsteroidKilled();
 
-            }
-            else {
-                game.removeEntity(other);
-                game.notifyAsteroidKilled();
-                game.notifyDeath(playerTag);
-            }
-            game.refreshRemoval();
         }
-		else if (other instanceof AlienShipGameObject) {
-            game.removeEntity(other);
-			game.notifyDeath(playerTag);
-		}
-        else if (other instanceof GravitationalGameObject) {
+        else {
+            game.removeEntity(asteroid);
+            game.notifyAsteroidKilled();
             game.notifyDeath(playerTag);
         }
-        else if (other instanceof ShipGameObject)
-        {
-            if (game.isFriendlyFireOn()) {
-                game.notifyDeath(playerTag);
-                game.notifyDeath(((ShipGameObject) other).getPlayerTag());
-                game.refreshRemoval();
-            }
+	}
+
+	/**
+	 * Notification that the player's ship has hit a flying saucer
+	 * 
+	 * @param alienShip The saucer the ship hit
+	 */
+	public void hitAlienShip(AlienShipGameObject alienShip) {
+        game.removeEntity(alienShip);
+		game.notifyDeath(playerTag);
+	}
+
+	/**
+	 * Notification that the player's ship has fallen into a gravity well
+	 * 
+	 * @param gravity The gravity well
+	 */
+	public void hitGravity(GravitationalGameObject gravity) {
+        game.notifyDeath(playerTag);
+	}
+
+	/**
+	 * Notification that the player's ship has hit the other player's
+	 * ship, which kills both if friendly fire is on
+	 * 
+	 * @param other The other ship
+	 */
+	public void hitShip(ShipGameObject other) {
+        if (game.isFriendlyFireOn()) {
+            game.notifyDeath(playerTag);
+            game.notifyDeath(other.getPlayerTag());
         }
 	}
 
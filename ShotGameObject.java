@@ -6,15 +6,22 @@ package org.newdawn.spaceinvaders;
  * @author Kevin Glass
  */
 public class ShotGameObject extends GameObject {
+	/** The speed at which shots move unless told otherwise */
+	private static final double DEFAULT_MOVE_SPEED = 300;
+	/** The shots that have left the game, waiting to be fired again */
+	private static final ObjectPool<ShotGameObject> pool = new ObjectPool<ShotGameObject>("shot",
+			Integer.getInteger("asteroids.pool.shots", 64));
 	/** The vertical speed at which the players shot moves */
-	private double moveSpeed = 300;
-    /** The counter for the shot dissappearing **/
-    private int counter = 0;
+	private double moveSpeed = DEFAULT_MOVE_SPEED;
+    /** The time a player's shot lasts before disappearing (ms) */
+    private static final int PLAYER_SHOT_LIFETIME = 2000;
+    /** The time an alien's shot lasts before disappearing (ms) */
+    private static final int ALIEN_SHOT_LIFETIME = 4000;
 	/** The game in which this entity exists */
 	private Game game;
 	/** True if this shot has been "used", i.e. its hit something */
 	private boolean used = false;
-    AePlayWave currentSound;
+    private int currentSound = -1;
     private String shotBy;
 
 	/**
@@ -30,8 +37,7 @@ public class ShotGameObject extends GameObject {
 		
 		this.game = game;
 
-        sync_cord_dxdy.replace("dy", new Double(moveSpeed));
-//		dy = moveSpeed;
+		setVerticalMovement(moveSpeed);
 	}
 
     /**
@@ -44,16 +50,7 @@ public class ShotGameObject extends GameObject {
      * @param currentAngle The initial angle of the shot
      */
     public ShotGameObject(Game game, String sprite, int x, int y, int currentAngle, double currentxvel, double currentyvel, String shotBy) {
-        super(sprite,x,y, currentAngle);
-        this.counter = 0;
-        this.game = game;
-        this.currentAngle = currentAngle;
-        this.shotBy = shotBy;
-        // TODO: x and y flipped. verify
-        sync_cord_dxdy.replace("dy", new Double(Math.sin(Math.toRadians((double)(currentAngle-90)))*moveSpeed));
-        sync_cord_dxdy.replace("dx", new Double(Math.cos(Math.toRadians((double)(currentAngle-90)))*moveSpeed));
-//        dy = Math.sin(Math.toRadians((double)(currentAngle-90)))*moveSpeed+currentxvel;
-//        dx = Math.cos(Math.toRadians((double)(currentAngle-90)))*moveSpeed+currentyvel;
+        this(game, sprite, x, y, currentAngle, currentxvel, currentyvel, shotBy, (int) DEFAULT_MOVE_SPEED);
     }
 
     /**
@@ -67,107 +64,141 @@ public class ShotGameObject extends GameObject {
      */
     public ShotGameObject(Game game, String sprite, int x, int y, int currentAngle, double currentxvel, double currentyvel, String shotBy, int in_moveSpeed) {
         super(sprite,x,y, currentAngle);
-        this.counter = 0;
+        init(game, currentAngle, shotBy, in_moveSpeed);
+    }
+
+    /**
+     * Get a shot from the pool, or create one if the pool is empty. Takes
+     * the same arguments as the constructor.
+     */
+    public static ShotGameObject create(Game game, String sprite, int x, int y, int currentAngle, double currentxvel, double currentyvel, String shotBy) {
+        return create(game, sprite, x, y, currentAngle, currentxvel, currentyvel, shotBy, (int) DEFAULT_MOVE_SPEED);
+    }
+
+    /**
+     * Get a shot from the pool, or create one if the pool is empty. Takes
+     * the same arguments as the constructor.
+     */
+    public static ShotGameObject create(Game game, String sprite, int x, int y, int currentAngle, double currentxvel, double currentyvel, String shotBy, int in_moveSpeed) {
+        ShotGameObject shot = pool.obtain();
+        if (shot == null) {
+            return new ShotGameObject(game, sprite, x, y, currentAngle, currentxvel, currentyvel, shotBy, in_moveSpeed);
+        }
+        shot.reinit(sprite, x, y, currentAngle);
+        shot.init(game, currentAngle, shotBy, in_moveSpeed);
+        return shot;
+    }
+
+    private void init(Game game, int currentAngle, String shotBy, int in_moveSpeed) {
         this.game = game;
-        this.currentAngle = currentAngle;
         this.shotBy = shotBy;
+        used = false;
+        currentSound = -1;
+        setLifetime(shotBy.equals("alien") ? ALIEN_SHOT_LIFETIME : PLAYER_SHOT_LIFETIME);
         // TODO: x and y flipped. verify
-        sync_cord_dxdy.replace("dy", new Double(Math.sin(Math.toRadians((double)(currentAngle-90)))*in_moveSpeed));
-        sync_cord_dxdy.replace("dx", new Double(Math.cos(Math.toRadians((double)(currentAngle-90)))*in_moveSpeed));
+        setVerticalMovement(Math.sin(Math.toRadians((double)(currentAngle-90)))*in_moveSpeed);
+        setHorizontalMovement(Math.cos(Math.toRadians((double)(currentAngle-90)))*in_moveSpeed);
 //        dy = Math.sin(Math.toRadians((double)(currentAngle-90)))*moveSpeed+currentxvel;
 //        dx = Math.cos(Math.toRadians((double)(currentAngle-90)))*moveSpeed+currentyvel;
     }
+
+    void recycle() {
+        pool.free(this);
+    }
+
+    boolean isPooled() {
+        return true;
+    }
+
+    protected RenderLayer getRenderLayer() {
+        return RenderLayer.SHOT;
+    }
+
+    protected EntityType getEntityType() {
+        return EntityType.SHOT;
+    }
+
+    /**
+     * Shots are small and quick, so could pass straight through
+     * something in one step. They are tested along their whole path.
+     */
+    protected boolean isSwept() {
+        return true;
+    }
+
     // TODO: change spawn location of spaceship
 	/**
-	 * Request that this shot moved based on time elapsed
+	 * Check if this shot has already hit something, as a shot can only
+	 * kill once
 	 * 
-	 * @param delta The time that has elapsed since last move
+	 * @return True if the shot should ignore this collision
 	 */
-	public void move(long delta) {
-		// proceed with normal move
-		super.move(delta);
-		// if we shot off the screen, remove ourselfs
-        counter++;  // it moves with the timer, so this value might have to change depending on the system
-        if (shotBy.equals("p1")) {
-            if (counter > 200) {
-                game.removeEntity(this);
-            }
-        }
-        else if (shotBy.equals("p2")) {
-            if (counter > 200) {
-                game.removeEntity(this);
-            }
-        }
-        else if (shotBy.equals("alien")) {
-            if (counter > 400) {
-                game.removeEntity(this);
-            }
-        }
+	private boolean isSpent() {
+		// prevents double kills, if we've already hit something,
+		// don't collide
+		if (used) {
+            SoundMixer.get().stop(currentSound);
+			return true;
+		}
+		return false;
 	}
-	
+
 	/**
-	 * Notification that this shot has collided with another
-	 * entity
+	 * Notification that this shot has hit an asteroid
 	 * 
-	 * @parma other The other entity with which we've collided
+	 * @param asteroid The asteroid the shot hit
 	 */
-	public void collidedWith(GameObject other) {
-		// prevents double kills, if we've already hit something,
-		// don't collide
-		if (used) {
-            if (currentSound != null)
-                currentSound.stopMusic();
+	public void hitAsteroid(AsteroidGameObject asteroid) {
+		if (isSpent()) {
 			return;
 		}
 		
-		// if we've hit an asteroid
-		if (other instanceof AsteroidGameObject) {
-            if (((AsteroidGameObject) other).isBig())
-            {
-                game.bigAsteroidDestroyed(this);
-                game.removeEntity(this);
-                game.removeEntity(other);
-                game.notifyAsteroidKilled();
-                new AePlayWave("sounds\\bangLarge.wav").start();
-                used = true;
-            }
-            else
-            {
-                // remove the affected entities
-                game.removeEntity(this);
-                game.removeEntity(other);
-
-                // notify the game that the alien has been killed
-                game.notifyAsteroidKilled();
-                new AePlayWave("sounds\\bangSmall.wav").start();
-                used = true;
-            }
-            //System.out.println(shotBy);
-            game.increaseScore(shotBy, 0, 1);
-		}
-
-        // Now check depending on who fired the shot
-        if (shotBy.equals("alien") && other instanceof ShipGameObject)
+        if (asteroid.isBig())
         {
-            game.notifyDeath(((ShipGameObject)other).getPlayerTag());
+            game.bigAsteroidDestroyed(this);
             game.removeEntity(this);
-            game.refreshRemoval();
+            game.removeEntity(asteroid);
+            game.notifyAsteroidKilled();
+            SoundMixer.get().trigger("sounds\\bangLarge.wav", SoundCategory.EXPLOSION, 1, 0);
+            used = true;
         }
-        else if ((shotBy.equals("p1") || shotBy.equals("p2")) && other instanceof AlienShipGameObject)
+        else
         {
+            // remove the affected entities
             game.removeEntity(this);
-            game.removeEntity(other);
-            ((AlienShipGameObject)other).stopMusic();
-            currentSound = new AePlayWave("sounds\\AlienThud.wav",1);
-            currentSound.start();
-            game.increaseScore(shotBy,1,game.getCurrentLevel());
+            game.removeEntity(asteroid);
+
+            // notify the game that the alien has been killed
+            game.notifyAsteroidKilled();
+            SoundMixer.get().trigger("sounds\\bangSmall.wav", SoundCategory.EXPLOSION, 1, 0);
             used = true;
         }
-        else if ((shotBy.equals("p1") || shotBy.equals("p2")) && other instanceof ShipGameObject)
+        //System.out.println(shotBy);
+        game.increaseScore(shotBy, 0, 1);
+	}
+
+	/**
+	 * Notification that this shot has hit a player's ship. Alien shots
+	 * always kill, players' shots only with friendly fire on.
+	 * 
+	 * @param ship The ship the shot hit
+	 */
+	public void hitShip(ShipGameObject ship) {
+		if (isSpent()) {
+			return;
+		}
+		
+        // Now check depending on who fired the shot
+        if (shotBy.equals("alien"))
+        {
+            game.notifyDeath(ship.getPlayerTag());
+            game.removeEntity(this);
+        }
+        else if (shotBy.equals("p1") || shotBy.equals("p2"))
         {
             if (game.isFriendlyFireOn()) {
-                if (!((ShipGameObject) other).getPlayerTag().equals(shotBy)) {
-                    game.notifyDeath(((ShipGameObject) other).getPlayerTag());
+                if (!ship.getPlayerTag().equals(shotBy)) {
+                    game.notifyDeath(ship.getPlayerTag());
                     game.removeEntity(this);
                     //game.removeEntity(other);
     //                //((AlienShipGameObject)other).stopMusic();
@@ -179,4 +210,26 @@ public class ShotGameObject extends GameObject {
             }
         }
 	}
+
+	/**
+	 * Notification that this shot has hit a flying saucer, which only
+	 * players' shots destroy
+	 * 
+	 * @param alienShip The saucer the shot hit
+	 */
+	public void hitAlienShip(AlienShipGameObject alienShip) {
+		if (isSpent()) {
+			return;
+		}
+		
+        if (shotBy.equals("p1") || shotBy.equals("p2"))
+        {
+            game.removeEntity(this);
+            game.removeEntity(alienShip);
+            alienShip.stopMusic();
+            currentSound = SoundMixer.get().play("sounds\\AlienThud.wav", SoundCategory.EXPLOSION, SoundMixer.QUIET, 0);
+            game.increaseScore(shotBy,1,game.getCurrentLevel());
+            used = true;
+        }
+	}
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * The kinds of sound the game plays. When the mixer runs out of voices,
+ * a sound may only take the voice of one with an equal or lower priority.
+ */
+public enum SoundCategory {
+    /** Level complete and similar one-off events */
+    EVENT(5),
+    /** Asteroids breaking up, ships exploding */
+    EXPLOSION(4),
+    /** Shots fired by players and aliens */
+    WEAPON(3),
+    /** Player ship thrusters */
+    THRUST(2),
+    /** The hum of a passing saucer */
+    AMBIENT(2),
+    /** The background heartbeat tones */
+    BEAT(1);
+
+    /** The priority of this category, higher wins */
+    private final int priority;
+
+    private SoundCategory(int priority) {
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+}
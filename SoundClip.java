@@ -0,0 +1,74 @@
+package org.newdawn.spaceinvaders;
+
+import java.nio.ShortBuffer;
+
+/**
+ * A decoded sound effect held by the SoundClipCache. Like a Sprite, a
+ * clip holds no playback state, so any number of voices can play the
+ * same clip at once.
+ */
+public class SoundClip {
+    /** The reference this clip was loaded from */
+    private String ref;
+    /** The interleaved stereo samples in the mixer's format */
+    private ShortBuffer samples;
+    /** The size in bytes of the file this clip was decoded from */
+    private long sourceBytes;
+    /** The time (ns) taken to decode this clip */
+    private long loadTime;
+
+    /**
+     * Create a new clip
+     *
+     * @param ref The reference this clip was loaded from
+     * @param samples The decoded samples, in SoundMixer.FORMAT
+     * @param sourceBytes The size in bytes of the source file
+     * @param loadTime The time (ns) taken to decode the clip
+     */
+    public SoundClip(String ref, ShortBuffer samples, long sourceBytes, long loadTime) {
+        this.ref = ref;
+        this.samples = samples;
+        this.sourceBytes = sourceBytes;
+        this.loadTime = loadTime;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    /**
+     * Get the samples of this clip. The buffer is shared, so callers
+     * must only use absolute gets.
+     *
+     * @return The interleaved stereo samples
+     */
+    public ShortBuffer getSamples() {
+        return samples;
+    }
+
+    /**
+     * Get the number of samples (two per frame) in this clip
+     *
+     * @return The length of this clip in samples
+     */
+    public int getLength() {
+        return samples.capacity();
+    }
+
+    /**
+     * Get the memory used by the decoded clip
+     *
+     * @return The size in bytes of the decoded samples
+     */
+    public long getBytes() {
+        return samples.capacity() * 2L;
+    }
+
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    public long getLoadTime() {
+        return loadTime;
+    }
+}
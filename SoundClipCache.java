@@ -0,0 +1,228 @@
+package org.newdawn.spaceinvaders;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * A resource manager for sound effects, the audio equivalent of the
+ * SpriteStore. Each wave file is decoded once, converted to the mixer's
+ * format, and kept for the life of the game so playback never touches
+ * the disk.
+ * <p>
+ * Clips preloaded at startup share one off-heap arena rather than
+ * being spread over the heap as separate arrays.
+ * <p>
+ * [singleton]
+ */
+public class SoundClipCache {
+    /** The single instance of this class */
+    private static SoundClipCache single = new SoundClipCache();
+
+    /**
+     * Get the single instance of this class
+     *
+     * @return The single instance of this class
+     */
+    public static SoundClipCache get() {
+        return single;
+    }
+
+    /** The cached clips, from reference to clip (null if the clip failed to load) */
+    private HashMap<String, SoundClip> clips = new HashMap<String, SoundClip>();
+    /** The clips in the order they were loaded, for reporting */
+    private ArrayList<SoundClip> loadOrder = new ArrayList<SoundClip>();
+
+    /**
+     * Decode every wave file in a directory into a single shared arena
+     *
+     * @param directory The directory holding the wave files, e.g. "sounds"
+     */
+    public synchronized void preload(String directory) {
+        File[] files = new File(directory).listFiles();
+        if (files == null) {
+            System.err.println("Sound directory not found: " + directory);
+            return;
+        }
+        Arrays.sort(files);
+
+        ArrayList<String> refs = new ArrayList<String>();
+        ArrayList<short[]> decoded = new ArrayList<short[]>();
+        ArrayList<Long> times = new ArrayList<Long>();
+        int total = 0;
+        for (File file : files) {
+            String ref = directory + "\\" + file.getName();
+            if (!file.getName().endsWith(".wav") || clips.containsKey(key(ref))) {
+                continue;
+            }
+            long start = System.nanoTime();
+            short[] samples = decode(file);
+            if (samples == null) {
+                clips.put(key(ref), null);
+                continue;
+            }
+            refs.add(ref);
+            decoded.add(samples);
+            times.add(System.nanoTime() - start);
+            total += samples.length;
+        }
+
+        // copy everything into one arena, each clip getting a slice of it
+        ShortBuffer arena = ByteBuffer.allocateDirect(total * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < refs.size(); i++) {
+            String ref = refs.get(i);
+            short[] samples = decoded.get(i);
+            int offset = arena.position();
+            arena.put(samples);
+            arena.position(offset).limit(offset + samples.length);
+            ShortBuffer slice = arena.slice();
+            arena.limit(arena.capacity()).position(offset + samples.length);
+
+            File file = new File(ref.replace('\\', File.separatorChar));
+            add(ref, new SoundClip(ref, slice, file.length(), times.get(i)));
+        }
+    }
+
+    /**
+     * Retrieve a clip from the cache, decoding it now if it was not preloaded
+     *
+     * @param ref The reference to the wave file
+     * @return The decoded clip, or null if the file could not be loaded
+     */
+    public synchronized SoundClip getClip(String ref) {
+        String key = key(ref);
+        if (clips.containsKey(key)) {
+            return clips.get(key);
+        }
+
+        long start = System.nanoTime();
+        File file = new File(ref.replace('\\', File.separatorChar));
+        short[] samples = decode(file);
+        if (samples == null) {
+            clips.put(key, null);
+            return null;
+        }
+        ShortBuffer buffer = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        buffer.put(samples);
+        buffer.flip();
+
+        SoundClip clip = new SoundClip(ref, buffer, file.length(), System.nanoTime() - start);
+        add(ref, clip);
+        return clip;
+    }
+
+    /**
+     * Get the memory used by all the decoded clips
+     *
+     * @return The total size in bytes of the cached samples
+     */
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (SoundClip clip : loadOrder) {
+            total += clip.getBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Print the load time and memory footprint of every cached clip
+     *
+     * @param out The stream to print the report to
+     */
+    public synchronized void printReport(PrintStream out) {
+        long totalTime = 0;
+        long totalSource = 0;
+        for (SoundClip clip : loadOrder) {
+            out.println(String.format("%-32s %8.2fms %9d bytes on disk %9d bytes cached",
+                    clip.getRef(), clip.getLoadTime() / 1000000.0, clip.getSourceBytes(), clip.getBytes()));
+            totalTime += clip.getLoadTime();
+            totalSource += clip.getSourceBytes();
+        }
+        out.println(String.format("%-32s %8.2fms %9d bytes on disk %9d bytes cached",
+                loadOrder.size() + " clips", totalTime / 1000000.0, totalSource, getTotalBytes()));
+    }
+
+    private void add(String ref, SoundClip clip) {
+        clips.put(key(ref), clip);
+        loadOrder.add(clip);
+    }
+
+    /**
+     * Get the key for a reference, so "sounds\x.wav" and "sounds/x.wav"
+     * find the same clip
+     */
+    private static String key(String ref) {
+        return ref.replace('\\', '/');
+    }
+
+    /**
+     * Decode a wave file into interleaved stereo samples at the mixer's
+     * sample rate
+     *
+     * @param soundFile The wave file
+     * @return The decoded samples, or null if the file could not be read
+     */
+    private static short[] decode(File soundFile) {
+        if (!soundFile.exists()) {
+            System.err.println("Wave file not found: " + soundFile);
+            return null;
+        }
+
+        try {
+            AudioInputStream source = AudioSystem.getAudioInputStream(soundFile);
+            AudioFormat sourceFormat = source.getFormat();
+            int channels = sourceFormat.getChannels();
+            AudioFormat pcmFormat = new AudioFormat(sourceFormat.getSampleRate(), 16, channels, true, false);
+            AudioInputStream pcm = AudioSystem.getAudioInputStream(pcmFormat, source);
+
+            byte[] data = new byte[(int) source.getFrameLength() * pcmFormat.getFrameSize()];
+            int read = 0;
+            while (read < data.length) {
+                int n = pcm.read(data, read, data.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            pcm.close();
+
+            // resample to our rate with linear interpolation, taking mono
+            // sources to both channels
+            int sourceFrames = read / pcmFormat.getFrameSize();
+            double step = sourceFormat.getSampleRate() / SoundMixer.FORMAT.getSampleRate();
+            int frames = (int) (sourceFrames / step);
+            short[] samples = new short[frames * 2];
+            for (int i = 0; i < frames; i++) {
+                double at = i * step;
+                int frame = (int) at;
+                double frac = at - frame;
+                int next = Math.min(frame + 1, sourceFrames - 1);
+                for (int c = 0; c < 2; c++) {
+                    int channel = Math.min(c, channels - 1);
+                    int a = sampleAt(data, frame * channels + channel);
+                    int b = sampleAt(data, next * channels + channel);
+                    samples[i * 2 + c] = (short) (a + (b - a) * frac);
+                }
+            }
+            return samples;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Read a little-endian 16 bit sample
+     */
+    private static int sampleAt(byte[] data, int index) {
+        return (data[index * 2 + 1] << 8) | (data[index * 2] & 0xff);
+    }
+}
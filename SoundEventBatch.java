@@ -0,0 +1,112 @@
+package org.newdawn.spaceinvaders;
+
+/**
+ * The sound effects triggered during one frame. Sounds are collected
+ * here as the game logic runs and handed to the mixer in one go at the
+ * end of the frame, so the mixer is locked once per frame rather than
+ * once per sound.
+ * <p>
+ * The same clip triggered more than once in a frame is only kept once,
+ * with its gain boosted to stand in for the copies.
+ */
+public class SoundEventBatch {
+    /** The most a clip's gain is boosted by merging triggers */
+    private static final float MAX_GAIN = 2.0f;
+
+    /** The clips triggered this frame */
+    private SoundClip[] clips = new SoundClip[16];
+    /** The category of each triggered clip */
+    private SoundCategory[] categories = new SoundCategory[16];
+    /** The gain of each triggered clip */
+    private float[] gains = new float[16];
+    /** The pan of each triggered clip */
+    private float[] pans = new float[16];
+    /** The number of distinct clips triggered this frame */
+    private int count;
+    /** The number of triggers merged into an earlier one this frame */
+    private int merged;
+
+    /**
+     * Add a sound to the batch, merging it with an earlier trigger of
+     * the same clip if there is one
+     *
+     * @param clip The clip to play
+     * @param category The kind of sound
+     * @param gain The volume to play at
+     * @param pan The position to play at, -1 being left and 1 right
+     */
+    public void add(SoundClip clip, SoundCategory category, float gain, float pan) {
+        for (int i = 0; i < count; i++) {
+            if (clips[i] == clip) {
+                float total = gains[i] + gain;
+                pans[i] = (pans[i] * gains[i] + pan * gain) / total;
+                gains[i] = boost(gains[i], gain);
+                if (category.getPriority() > categories[i].getPriority()) {
+                    categories[i] = category;
+                }
+                merged++;
+                return;
+            }
+        }
+
+        if (count == clips.length) {
+            clips = java.util.Arrays.copyOf(clips, count * 2);
+            categories = java.util.Arrays.copyOf(categories, count * 2);
+            gains = java.util.Arrays.copyOf(gains, count * 2);
+            pans = java.util.Arrays.copyOf(pans, count * 2);
+        }
+        clips[count] = clip;
+        categories[count] = category;
+        gains[count] = gain;
+        pans[count] = pan;
+        count++;
+    }
+
+    /**
+     * Combine the gain of two copies of a sound. Copies started together
+     * add in power rather than amplitude, so the result is louder than
+     * either but well short of their sum.
+     *
+     * @param a The gain of the first copy
+     * @param b The gain of the second copy
+     * @return The gain of a single voice standing in for both
+     */
+    public static float boost(float a, float b) {
+        return Math.min(MAX_GAIN, (float) Math.sqrt(a * a + b * b));
+    }
+
+    /**
+     * Empty the batch ready for the next frame
+     */
+    public void clear() {
+        for (int i = 0; i < count; i++) {
+            clips[i] = null;
+        }
+        count = 0;
+        merged = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getMerged() {
+        return merged;
+    }
+
+    public SoundClip getClip(int index) {
+        return clips[index];
+    }
+
+    public SoundCategory getCategory(int index) {
+        return categories[index];
+    }
+
+    public float getGain(int index) {
+        return gains[index];
+    }
+
+    public float getPan(int index) {
+        return pans[index];
+    }
+}
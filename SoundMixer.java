@@ -0,0 +1,553 @@
+package org.newdawn.spaceinvaders;
+
+import java.nio.ShortBuffer;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The single audio engine for the game. Rather than starting a thread
+ * and opening a new line for every sound effect, all effects are played
+ * as "voices" that one long lived mixing thread sums into a small buffer
+ * and writes to a single output sink.
+ * <p>
+ * [singleton]
+ */
+public class SoundMixer implements Runnable {
+    /** The format everything is mixed in: 44.1kHz, 16 bit, stereo, little-endian */
+    public static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    /** The number of frames mixed per buffer (~11.6ms) */
+    private static final int BLOCK_FRAMES = 512;
+    /** The number of mixed buffers the sink may queue ahead of playback */
+    private static final int SINK_BLOCKS = 4;
+    /** The gain for quieter effects, 10 decibels down */
+    public static final float QUIET = 0.316f;
+    /** The most voices the mixer can ever be configured to play at once */
+    private static final int MAX_VOICES = 64;
+
+    /** How a voice is chosen to make way for a new sound when the budget is used up */
+    public enum StealPolicy {
+        /** Never steal, the new sound is dropped */
+        NONE,
+        /** Steal the voice that started playing first */
+        OLDEST,
+        /** Steal the voice playing at the lowest volume */
+        QUIETEST
+    }
+
+    /** The single instance of this class */
+    private static SoundMixer single = new SoundMixer();
+
+    /**
+     * Get the single instance of this class, starting the mixing
+     * thread if it is not already running
+     *
+     * @return The single instance of this class
+     */
+    public static SoundMixer get() {
+        single.start();
+        return single;
+    }
+
+    /** A sound currently being played by the mixer */
+    private static class Voice {
+        /** The clip being played */
+        SoundClip clip;
+        /** The interleaved stereo samples being played, shared with the clip cache */
+        ShortBuffer samples;
+        /** The index of the next sample to be mixed */
+        int position;
+        /** The volume applied to the left channel */
+        float gainLeft;
+        /** The volume applied to the right channel */
+        float gainRight;
+        /** The kind of sound being played */
+        SoundCategory category;
+        /** The handle given out when this voice was started */
+        int handle;
+        /** True if this voice is currently playing */
+        boolean active;
+    }
+
+    /** The fixed set of voices, reused for every sound played */
+    private final Voice[] voices = new Voice[MAX_VOICES];
+    /** The number of voices that may play at once */
+    private int maxVoices = Integer.getInteger("asteroids.audio.voices", 16);
+    /** The way voices are stolen once the budget is used up */
+    private StealPolicy stealPolicy = StealPolicy.OLDEST;
+    /** The music streamed under the sound effects, if any */
+    private volatile MusicStream music;
+    /** The sounds triggered this frame, waiting to be handed to the mixer */
+    private final SoundEventBatch batch = new SoundEventBatch();
+    /** A clip starting this many samples after a copy of itself is merged into it */
+    private int coalesceSamples = millisToSamples(Integer.getInteger("asteroids.audio.coalesce", 40));
+    /** The handle given to the last voice started */
+    private int lastHandle = 0;
+    /** The sink mixed audio is written to */
+    private AudioSink sink;
+    /** The mixing thread, null until the mixer is started */
+    private Thread thread;
+    /** True while the mixing thread should keep running */
+    private volatile boolean running;
+
+    /** The number of voices playing when the last buffer was mixed */
+    private volatile int voicesActive;
+    /** The number of times the sink ran dry before we could refill it */
+    private volatile long underruns;
+    /** The time (ns) taken to mix the last buffer */
+    private volatile long lastMixTime;
+    /** The total time (ns) spent mixing */
+    private volatile long totalMixTime;
+    /** The number of buffers mixed */
+    private volatile long buffersMixed;
+    /** The number of sounds not played because no voice could be freed */
+    private volatile long dropped;
+    /** The number of voices cut short to make way for another sound */
+    private volatile long stolen;
+    /** The number of triggers merged into another voice rather than played */
+    private volatile long coalesced;
+
+    private SoundMixer() {
+        for (int i = 0; i < MAX_VOICES; i++) {
+            voices[i] = new Voice();
+        }
+    }
+
+    /**
+     * Use the given sink for output instead of picking one. Must be
+     * called before the mixer is first started.
+     *
+     * @param sink The sink mixed audio should be written to
+     */
+    public synchronized void setSink(AudioSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Start the mixing thread if it is not already running. If no sink
+     * has been set, the sound card is used if one is available, otherwise
+     * (or if the "asteroids.audio" property is "null") a silent sink is used.
+     * A sink that fails to open is replaced with a silent sink too.
+     */
+    private synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        int bufferBytes = BLOCK_FRAMES * FORMAT.getFrameSize() * SINK_BLOCKS;
+        if (sink == null && !"null".equals(System.getProperty("asteroids.audio"))) {
+            sink = new LineAudioSink();
+        }
+        if (sink != null && !sink.open(FORMAT, bufferBytes)) {
+            sink = null;
+        }
+        if (sink == null) {
+            sink = new NullAudioSink();
+            sink.open(FORMAT, bufferBytes);
+        }
+
+        running = true;
+        thread = new Thread(this, "SoundMixer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the mixing thread and release the output sink
+     */
+    public synchronized void shutdown() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        try { thread.join(); } catch (InterruptedException e) {}
+        thread = null;
+        sink.close();
+        sink = null;
+    }
+
+    /**
+     * Set the number of sounds that may play at once
+     *
+     * @param maxVoices The voice budget, between 1 and 64
+     */
+    public void setMaxVoices(int maxVoices) {
+        synchronized (voices) {
+            this.maxVoices = Math.max(1, Math.min(MAX_VOICES, maxVoices));
+        }
+    }
+
+    public int getMaxVoices() {
+        return maxVoices;
+    }
+
+    /**
+     * Set how a voice is picked to make way for a new sound once the
+     * voice budget is used up
+     *
+     * @param stealPolicy The policy to use
+     */
+    public void setStealPolicy(StealPolicy stealPolicy) {
+        synchronized (voices) {
+            this.stealPolicy = stealPolicy;
+        }
+    }
+
+    /**
+     * Play a sound effect as a weapon sound
+     *
+     * @param clipId The reference to the wave file to play
+     * @param gain The volume to play at, 1 being the volume of the file
+     * @param pan The position to play at, -1 being left, 0 center and 1 right
+     * @return The handle of the voice playing the sound, or -1 if it could not be played
+     */
+    public int play(String clipId, float gain, float pan) {
+        return play(clipId, SoundCategory.WEAPON, gain, pan);
+    }
+
+    /**
+     * Play a sound effect. If the voice budget is used up, a playing
+     * sound of no higher priority is stolen according to the steal
+     * policy, otherwise the new sound is dropped.
+     *
+     * @param clipId The reference to the wave file to play
+     * @param category The kind of sound, which decides its priority
+     * @param gain The volume to play at, 1 being the volume of the file
+     * @param pan The position to play at, -1 being left, 0 center and 1 right
+     * @return The handle of the voice playing the sound, or -1 if it could not be played
+     */
+    public int play(String clipId, SoundCategory category, float gain, float pan) {
+        SoundClip clip = SoundClipCache.get().getClip(clipId);
+        if (clip == null) {
+            return -1;
+        }
+
+        synchronized (voices) {
+            return startVoice(clip, category, gain, pan);
+        }
+    }
+
+    /**
+     * Set the music to be streamed under the sound effects
+     *
+     * @param music The music to play, or null for none
+     */
+    public void setMusic(MusicStream music) {
+        this.music = music;
+    }
+
+    /**
+     * Set how close together two triggers of the same clip must be for
+     * the second to be merged into the first
+     *
+     * @param millis The coalescing window in milliseconds, 0 to disable
+     */
+    public void setCoalesceWindow(int millis) {
+        synchronized (voices) {
+            coalesceSamples = millisToSamples(millis);
+        }
+    }
+
+    /**
+     * Trigger a sound effect to be played at the end of this frame. Unlike
+     * play(), triggers of the same clip within the coalescing window are
+     * merged into one louder voice, so the amount of audio work no longer
+     * depends on how many objects make the same noise. Must be called
+     * from the game loop thread.
+     *
+     * @param clipId The reference to the wave file to play
+     * @param category The kind of sound, which decides its priority
+     * @param gain The volume to play at, 1 being the volume of the file
+     * @param pan The position to play at, -1 being left, 0 center and 1 right
+     */
+    public void trigger(String clipId, SoundCategory category, float gain, float pan) {
+        SoundClip clip = SoundClipCache.get().getClip(clipId);
+        if (clip != null) {
+            batch.add(clip, category, gain, pan);
+        }
+    }
+
+    /**
+     * Hand the sounds triggered this frame to the mixer. Called once per
+     * frame by the game loop.
+     */
+    public void flush() {
+        if (batch.size() == 0) {
+            return;
+        }
+
+        synchronized (voices) {
+            coalesced += batch.getMerged();
+            for (int i = 0; i < batch.size(); i++) {
+                SoundClip clip = batch.getClip(i);
+                float gain = batch.getGain(i);
+
+                // if the clip only just started playing, make that voice
+                // louder rather than starting it again
+                Voice recent = null;
+                for (int v = 0; v < MAX_VOICES; v++) {
+                    Voice voice = voices[v];
+                    if (voice.active && voice.clip == clip && voice.position < coalesceSamples
+                            && (recent == null || voice.position < recent.position)) {
+                        recent = voice;
+                    }
+                }
+                if (recent != null) {
+                    recent.gainLeft = SoundEventBatch.boost(recent.gainLeft, gain);
+                    recent.gainRight = SoundEventBatch.boost(recent.gainRight, gain);
+                    coalesced++;
+                }
+                else {
+                    startVoice(clip, batch.getCategory(i), gain, batch.getPan(i));
+                }
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Start a clip playing on a new voice. Must be called holding the
+     * voices lock.
+     *
+     * @return The handle of the new voice, or -1 if the sound was dropped
+     */
+    private int startVoice(SoundClip clip, SoundCategory category, float gain, float pan) {
+        Voice voice = allocateVoice(category);
+        if (voice == null) {
+            dropped++;
+            return -1;
+        }
+        voice.clip = clip;
+        voice.samples = clip.getSamples();
+        voice.position = 0;
+        voice.gainLeft = gain * (pan > 0 ? 1 - pan : 1);
+        voice.gainRight = gain * (pan < 0 ? 1 + pan : 1);
+        voice.category = category;
+        voice.handle = ++lastHandle;
+        voice.active = true;
+        return voice.handle;
+    }
+
+    /**
+     * Convert a duration to a number of (interleaved stereo) samples
+     */
+    private static int millisToSamples(int millis) {
+        return (int) (FORMAT.getSampleRate() * millis / 1000) * 2;
+    }
+
+    /**
+     * Find a voice for a new sound, stealing one if the budget is used
+     * up. Must be called holding the voices lock.
+     *
+     * @param category The kind of sound that wants a voice
+     * @return The voice to use, or null if none could be freed
+     */
+    private Voice allocateVoice(SoundCategory category) {
+        Voice free = null;
+        Voice victim = null;
+        int active = 0;
+        for (int i = 0; i < MAX_VOICES; i++) {
+            Voice voice = voices[i];
+            if (!voice.active) {
+                if (free == null) {
+                    free = voice;
+                }
+                continue;
+            }
+            active++;
+
+            // only sounds of equal or lower priority can be stolen, the
+            // lowest priority going first
+            int priority = voice.category.getPriority();
+            if (priority > category.getPriority()) {
+                continue;
+            }
+            if (victim == null || priority < victim.category.getPriority()) {
+                victim = voice;
+            }
+            else if (priority == victim.category.getPriority()) {
+                if (stealPolicy == StealPolicy.OLDEST && voice.handle < victim.handle) {
+                    victim = voice;
+                }
+                else if (stealPolicy == StealPolicy.QUIETEST
+                        && Math.max(voice.gainLeft, voice.gainRight) < Math.max(victim.gainLeft, victim.gainRight)) {
+                    victim = voice;
+                }
+            }
+        }
+
+        if (active < maxVoices) {
+            return free;
+        }
+        if (stealPolicy == StealPolicy.NONE || victim == null) {
+            return null;
+        }
+        stolen++;
+        victim.active = false;
+        return victim;
+    }
+
+    /**
+     * Stop a sound that is playing
+     *
+     * @param handle The handle returned when the sound was played
+     */
+    public void stop(int handle) {
+        if (handle < 0) {
+            return;
+        }
+        synchronized (voices) {
+            for (int i = 0; i < MAX_VOICES; i++) {
+                if (voices[i].active && voices[i].handle == handle) {
+                    voices[i].active = false;
+                    voices[i].clip = null;
+                    voices[i].samples = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * The mixing loop. Each pass sums the active voices into one buffer
+     * and hands it to the sink, which blocks until it has room.
+     */
+    public void run() {
+        int[] mix = new int[BLOCK_FRAMES * 2];
+        byte[] out = new byte[BLOCK_FRAMES * FORMAT.getFrameSize()];
+        boolean firstBuffer = true;
+
+        while (running) {
+            long start = System.nanoTime();
+            java.util.Arrays.fill(mix, 0);
+
+            int active = 0;
+            synchronized (voices) {
+                for (int v = 0; v < MAX_VOICES; v++) {
+                    Voice voice = voices[v];
+                    if (!voice.active) {
+                        continue;
+                    }
+                    active++;
+
+                    ShortBuffer samples = voice.samples;
+                    int count = Math.min(mix.length, samples.capacity() - voice.position);
+                    int position = voice.position;
+                    for (int i = 0; i < count; i += 2) {
+                        mix[i] += (int) (samples.get(position + i) * voice.gainLeft);
+                        mix[i + 1] += (int) (samples.get(position + i + 1) * voice.gainRight);
+                    }
+                    voice.position += count;
+                    if (voice.position >= samples.capacity()) {
+                        voice.active = false;
+                        voice.clip = null;
+                        voice.samples = null;
+                    }
+                }
+            }
+
+            MusicStream currentMusic = music;
+            if (currentMusic != null) {
+                currentMusic.mixInto(mix, mix.length);
+            }
+
+            // clip and convert to little-endian bytes
+            for (int i = 0; i < mix.length; i++) {
+                int sample = mix[i];
+                if (sample > Short.MAX_VALUE) {
+                    sample = Short.MAX_VALUE;
+                }
+                else if (sample < Short.MIN_VALUE) {
+                    sample = Short.MIN_VALUE;
+                }
+                out[i * 2] = (byte) sample;
+                out[i * 2 + 1] = (byte) (sample >> 8);
+            }
+
+            long mixTime = System.nanoTime() - start;
+            voicesActive = active;
+            lastMixTime = mixTime;
+            totalMixTime += mixTime;
+            buffersMixed++;
+
+            if (!firstBuffer && sink.isStarved()) {
+                underruns++;
+            }
+            firstBuffer = false;
+            sink.write(out, 0, out.length);
+        }
+    }
+
+    /**
+     * Get the number of voices that were playing in the last mixed buffer
+     *
+     * @return The number of active voices
+     */
+    public int getVoicesActive() {
+        return voicesActive;
+    }
+
+    /**
+     * Get the number of times the output ran dry before being refilled
+     *
+     * @return The number of underruns since the mixer started
+     */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /**
+     * Get the time taken to mix the last buffer
+     *
+     * @return The mix time in nanoseconds
+     */
+    public long getLastMixTime() {
+        return lastMixTime;
+    }
+
+    /**
+     * Get the average time taken to mix a buffer
+     *
+     * @return The average mix time in nanoseconds
+     */
+    public long getAverageMixTime() {
+        long buffers = buffersMixed;
+        return buffers == 0 ? 0 : totalMixTime / buffers;
+    }
+
+    /**
+     * Get the number of sounds that were not played because the voice
+     * budget was used up by sounds of higher priority
+     *
+     * @return The number of dropped sounds since the mixer started
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Get the number of playing sounds cut short to make way for others
+     *
+     * @return The number of stolen voices since the mixer started
+     */
+    public long getStolen() {
+        return stolen;
+    }
+
+    /**
+     * Get the number of triggered sounds merged into another voice
+     *
+     * @return The number of coalesced triggers since the mixer started
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * Get a one line summary of the mixer statistics
+     *
+     * @return The statistics for display or logging
+     */
+    public String getStatistics() {
+        return "voices=" + voicesActive + "/" + maxVoices + " dropped=" + dropped + " stolen=" + stolen + " coalesced=" + coalesced
+                + " underruns=" + underruns
+                + " mix=" + (lastMixTime / 1000) + "us avg=" + (getAverageMixTime() / 1000) + "us";
+    }
+}
@@ -0,0 +1,163 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A broadphase that drops every object into the cells of a uniform grid
+ * laid over the screen, and only pairs up objects that share a cell.
+ * The grid is rebuilt from scratch each step with a counting sort into
+ * flat arrays, so it allocates nothing once it has grown to size.
+ * <p>
+ * The screen wraps round, so the grid does too: the cells divide the
+ * screen exactly, and an object hanging off one edge is also put in the
+ * cells along the opposite edge. Cells are about 64 pixels across
+ * unless the "asteroids.collision.cell" property says otherwise.
+ */
+public class SpatialHashGrid implements CollisionBroadphase {
+    /** The width of the world, which wraps round */
+    private static final int WORLD_WIDTH = EntityStore.WORLD_WIDTH;
+    /** The height of the world, which wraps round */
+    private static final int WORLD_HEIGHT = EntityStore.WORLD_HEIGHT;
+
+    /** The number of columns of cells */
+    private int columns;
+    /** The number of rows of cells */
+    private int rows;
+    /** The width of a cell */
+    private double cellWidth;
+    /** The height of a cell */
+    private double cellHeight;
+    /** Where each cell's objects start in entries, with one extra at the end */
+    private int[] cellStart;
+    /** The objects in each cell, cell after cell */
+    private int[] entries = new int[256];
+    /** The first and last column and row (unwrapped) each object covers */
+    private int[] spans = new int[256 * 4];
+    /** The rectangle used to read each object's bounds */
+    private Rectangle bounds = new Rectangle();
+    /** The number of objects in the last step */
+    private int lastObjects;
+    /** The number of pairs found in the last step */
+    private int lastPairs;
+
+    /**
+     * Create a grid with the cell size from the "asteroids.collision.cell"
+     * property
+     */
+    public SpatialHashGrid() {
+        this(Integer.getInteger("asteroids.collision.cell", 64));
+    }
+
+    /**
+     * Create a grid
+     *
+     * @param cellSize The rough size of a cell, adjusted so the cells
+     * divide the screen exactly
+     */
+    public SpatialHashGrid(int cellSize) {
+        columns = Math.max(1, Math.round((float) WORLD_WIDTH / cellSize));
+        rows = Math.max(1, Math.round((float) WORLD_HEIGHT / cellSize));
+        cellWidth = (double) WORLD_WIDTH / columns;
+        cellHeight = (double) WORLD_HEIGHT / rows;
+        cellStart = new int[columns * rows + 1];
+    }
+
+    public void findPairs(List<GameObject> gameObjects, CollisionPairs pairs) {
+        int count = gameObjects.size();
+        if (spans.length < count * 4) {
+            spans = new int[count * 8];
+        }
+
+        // work out which cells each object covers, and count the
+        // objects in each cell
+        Arrays.fill(cellStart, 0);
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            gameObjects.get(i).getSweptBounds(bounds);
+            int minColumn = floor(bounds.x / cellWidth);
+            int maxColumn = floor((bounds.x + Math.max(0, bounds.width)) / cellWidth);
+            int minRow = floor(bounds.y / cellHeight);
+            int maxRow = floor((bounds.y + Math.max(0, bounds.height)) / cellHeight);
+            // an object bigger than the screen is in every cell once
+            if (maxColumn - minColumn >= columns) {
+                minColumn = 0;
+                maxColumn = columns - 1;
+            }
+            if (maxRow - minRow >= rows) {
+                minRow = 0;
+                maxRow = rows - 1;
+            }
+            spans[i * 4] = minColumn;
+            spans[i * 4 + 1] = maxColumn;
+            spans[i * 4 + 2] = minRow;
+            spans[i * 4 + 3] = maxRow;
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellStart[cell(column, row) + 1]++;
+                    total++;
+                }
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // drop each object into its cells; objects go in in order, so
+        // the objects in a cell are in order too
+        if (entries.length < total) {
+            entries = new int[total * 2];
+        }
+        for (int i = 0; i < count; i++) {
+            for (int row = spans[i * 4 + 2]; row <= spans[i * 4 + 3]; row++) {
+                for (int column = spans[i * 4]; column <= spans[i * 4 + 1]; column++) {
+                    entries[cellStart[cell(column, row)]++] = i;
+                }
+            }
+        }
+        // filling in moved each start to the next cell's start
+        for (int c = columns * rows; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+
+        // pair up the objects in each cell
+        pairs.clear();
+        for (int c = 0; c < columns * rows; c++) {
+            int end = cellStart[c + 1];
+            for (int a = cellStart[c]; a < end; a++) {
+                for (int b = a + 1; b < end; b++) {
+                    pairs.add(entries[a], entries[b]);
+                }
+            }
+        }
+        // objects sharing more than one cell were paired more than once
+        pairs.sort(count);
+
+        lastObjects = count;
+        lastPairs = pairs.size();
+    }
+
+    /**
+     * Round down to a whole number, quicker than Math.floor() where the
+     * JVM doesn't turn that into a single instruction
+     */
+    private static int floor(double value) {
+        int whole = (int) value;
+        return value < whole ? whole - 1 : whole;
+    }
+
+    /**
+     * Get the index of a cell, wrapping round the edges of the screen
+     */
+    private int cell(int column, int row) {
+        return Math.floorMod(row, rows) * columns + Math.floorMod(column, columns);
+    }
+
+    public String getStatistics() {
+        long all = (long) lastObjects * (lastObjects - 1) / 2;
+        return "spatial hash (" + columns + "x" + rows + " cells): " + lastPairs + " of " + all
+                + " pairs tested last step";
+    }
+}
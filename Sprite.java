@@ -2,8 +2,6 @@ package org.newdawn.spaceinvaders;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.PixelGrabber;
 
@@ -15,8 +13,19 @@ import java.awt.image.PixelGrabber;
  * copies of the image.
  */
 public class Sprite {
+	/** The id to be given to the next sprite created */
+	private static int nextId = 0;
+
 	/** The image to be drawn for this sprite */
 	private Image image;
+	/** The image as a buffered image, used to render rotated frames */
+	private BufferedImage bufferedImage;
+	/** The region of a shared image the sprite is drawn from */
+	private AtlasRegion region;
+	/** The unique id of this sprite, used as its key in the rotation cache */
+	private int id;
+	/** The shape of this sprite for collisions, or null to collide as a rectangle */
+	private CollisionMask collisionMask;
 
 	/**
 	 * Create a new sprite based on an image
@@ -24,7 +33,50 @@ public class Sprite {
 	 * @param image The image that is this sprite
 	 */
 	public Sprite(Image image) {
+		this(image, null);
+	}
+
+	/**
+	 * Create a new sprite based on an image that has been packed into
+	 * a texture atlas
+	 *
+	 * @param image The image that is this sprite
+	 * @param region The region of the atlas holding a copy of the image
+	 */
+	public Sprite(Image image, AtlasRegion region) {
 		this.image = image;
+		this.bufferedImage = toBufferedImage(image);
+		this.region = region != null ? region : new AtlasRegion(bufferedImage);
+		synchronized (Sprite.class) {
+			this.id = nextId++;
+		}
+	}
+
+	/**
+	 * Get the unique id of this sprite
+	 *
+	 * @return The id of this sprite
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Get the shape of this sprite for collisions
+	 *
+	 * @return The collision shape, or null if the sprite collides as a rectangle
+	 */
+	public CollisionMask getCollisionMask() {
+		return collisionMask;
+	}
+
+	/**
+	 * Set the shape of this sprite for collisions
+	 *
+	 * @param collisionMask The collision shape, or null to collide as a rectangle
+	 */
+	public void setCollisionMask(CollisionMask collisionMask) {
+		this.collisionMask = collisionMask;
 	}
 	
 	/**
@@ -53,7 +105,7 @@ public class Sprite {
 	 * @param y The y location at which to draw the sprite
 	 */
 	public void draw(Graphics g,int x,int y) {
-		g.drawImage(image,x,y,null);
+		region.draw(g,x,y);
 	}
 
     /**
@@ -65,29 +117,41 @@ public class Sprite {
      * @param currentAngle The angle which the sprite is rotated
      */
     public void draw(Graphics g,int x,int y, int currentAngle) {
-        Graphics2D g2d = (Graphics2D)g;
-
-        AffineTransform origXform = g2d.getTransform();
-        AffineTransform newXform = (AffineTransform)(origXform.clone());
-        //center of rotation is center of the ship
-        int xRot = (int)(x + getWidth()/2);
-        int yRot = (int)(y + getHeight()/2);
-        newXform.rotate(Math.toRadians(currentAngle), xRot, yRot);
-        g2d.setTransform(newXform);
-        //draw image centered in panel
-        //int x = (getWidth() - TestImage.getWidth(this))/2;
-        //int y = (getHeight() - TestImage.getHeight(this))/2;
-
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-        BufferedImage buffimg = toBufferedImage(image);
-        g2d.setPaint(new TexturePaint(buffimg,
-                new Rectangle2D.Float(x, y, buffimg.getWidth(), buffimg.getHeight())));
-
-//        g2d.drawImage(buffimg,x,y,null);
-        g2d.fillRect(x, y, buffimg.getWidth(), buffimg.getHeight());
-        g2d.setTransform(origXform);
+        // the rotated frame is square and centered on the center of the sprite
+        AtlasRegion frame = RotatedSpriteCache.get().getFrame(this, bufferedImage, currentAngle);
+        int frameX = x + getWidth()/2 - frame.getWidth()/2;
+        int frameY = y + getHeight()/2 - frame.getHeight()/2;
+        frame.draw(g, frameX, frameY);
+    }
 
+    /**
+     * Render all the rotated frames of this sprite now, rather than the
+     * first time each angle is drawn
+     */
+    public void prerenderRotations() {
+        RotatedSpriteCache.get().prerender(this, bufferedImage);
+    }
+
+    /**
+     * Create an empty image in the screen's format, or a plain ARGB
+     * image if we have no screen
+     *
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param transparency The kind of transparency the image needs
+     * @return The new image
+     */
+    public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            try {
+                GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                        .getDefaultScreenDevice().getDefaultConfiguration();
+                return gc.createCompatibleImage(width, height, transparency);
+            } catch (HeadlessException e) {
+            } // No screen
+        }
+        return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
     }
 
     public static BufferedImage toBufferedImage(Image image) {
@@ -1,12 +1,21 @@
 package org.newdawn.spaceinvaders;
 
-import java.awt.GraphicsConfiguration;
-import java.awt.GraphicsEnvironment;
-import java.awt.Image;
+import java.awt.Graphics;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 
@@ -16,6 +25,21 @@ import javax.imageio.ImageIO;
  * it makes sense to have a central resource loader that goes away, gets
  * your resources and caches them for future use.
  * <p>
+ * Sprites are packed into a shared texture atlas (unless the
+ * "asteroids.atlas" property is false) so that drawing a frame
+ * switches between as few source images as possible. Every frame is
+ * drawn rotated, so the rotated frames go into the same atlas (unless
+ * the "asteroids.atlas.rotations" property is false).
+ * <p>
+ * All the sprites in the manifest are decoded in parallel at startup
+ * by preload(), so the game loop never has to wait on a PNG decode
+ * the first time an object appears.
+ * <p>
+ * Each sprite's collision shape (a bounding circle and a bitmask per
+ * rotation step) is worked out from its alpha channel as it is loaded,
+ * unless the "asteroids.collision.masks" property is false, in which
+ * case sprites collide as rectangles.
+ * <p>
  * [singleton]
  * <p>
  * @author Kevin Glass
@@ -33,8 +57,103 @@ public class SpriteStore {
 		return single;
 	}
 	
+	/** The sprites used by the game, all of which are loaded by preload() */
+	public static final String[] MANIFEST = {
+		"sprites\\ShipNormal.png",
+		"sprites\\ShipNormal2.png",
+		"sprites\\ShipRogue.png",
+		"sprites\\Asteroid1.png",
+		"sprites\\SmallAsteroid1.png",
+		"sprites\\GravitationalObject.png",
+		"sprites\\AlienShip.png",
+		"sprites\\Bullet.png",
+		"sprites\\Bullet2.png",
+		"sprites\\EnemyBullet.png",
+		"sprites\\RogueBullet.png",
+	};
+
 	/** The cached sprite map, from reference to sprite instance */
-	private HashMap sprites = new HashMap();
+	private ConcurrentHashMap<String, Sprite> sprites = new ConcurrentHashMap<String, Sprite>();
+	/** The atlas all sprites are packed into, or null if each sprite keeps its own image */
+	private TextureAtlas atlas = Boolean.parseBoolean(System.getProperty("asteroids.atlas", "true")) ? new TextureAtlas(1024) : null;
+	/** True if sprites get collision masks made from their alpha channel */
+	private boolean collisionMasks = Boolean.parseBoolean(System.getProperty("asteroids.collision.masks", "true"));
+
+	/**
+	 * Create the store, handing its atlas to the rotated frame cache
+	 */
+	private SpriteStore() {
+		if (atlas != null && Boolean.parseBoolean(System.getProperty("asteroids.atlas.rotations", "true"))) {
+			RotatedSpriteCache.get().setAtlas(atlas);
+		}
+	}
+
+	/**
+	 * Load every sprite in a manifest, decoding the images in parallel.
+	 * Once this has returned, getSprite() for any of the references is
+	 * a plain lookup and never touches the disk.
+	 *
+	 * @param refs The references to the images to load
+	 */
+	public void preload(String[] refs) {
+		long start = System.nanoTime();
+		int threads = Math.min(refs.length, Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+
+		// decode everything and work out the collision masks on the
+		// worker pool
+		ArrayList<Future<BufferedImage>> decoded = new ArrayList<Future<BufferedImage>>();
+		final long[] times = new long[refs.length];
+		final CollisionMask[] masks = new CollisionMask[refs.length];
+		for (int i = 0; i < refs.length; i++) {
+			final String ref = refs[i];
+			final int index = i;
+			decoded.add(pool.submit(new Callable<BufferedImage>() {
+				public BufferedImage call() {
+					long loadStart = System.nanoTime();
+					BufferedImage image = loadImage(ref);
+					masks[index] = createCollisionMask(image);
+					times[index] = System.nanoTime() - loadStart;
+					return image;
+				}
+			}));
+		}
+
+		final HashMap<String, BufferedImage> images = new HashMap<String, BufferedImage>();
+		HashMap<String, CollisionMask> shapes = new HashMap<String, CollisionMask>();
+		for (int i = 0; i < refs.length; i++) {
+			try {
+				BufferedImage image = decoded.get(i).get();
+				if (image != null) {
+					images.put(refs[i], image);
+					shapes.put(refs[i], masks[i]);
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		pool.shutdown();
+
+		// pack the tallest images first, so the atlas shelves are filled
+		// by images of similar heights
+		ArrayList<String> order = new ArrayList<String>(images.keySet());
+		Collections.sort(order, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return images.get(b).getHeight() - images.get(a).getHeight();
+			}
+		});
+		for (String ref : order) {
+			if (!sprites.containsKey(ref)) {
+				sprites.put(ref, createSprite(images.get(ref), shapes.get(ref)));
+			}
+		}
+
+		for (int i = 0; i < refs.length; i++) {
+			System.out.println(String.format("%-32s %8.2fms", refs[i], times[i] / 1000000.0));
+		}
+		System.out.println(String.format("%-32s %8.2fms on %d threads", refs.length + " sprites",
+				(System.nanoTime() - start) / 1000000.0, threads));
+	}
 	
 	/**
 	 * Retrieve a sprite from the store
@@ -45,21 +164,52 @@ public class SpriteStore {
 	public Sprite getSprite(String ref) {
 		// if we've already got the sprite in the cache
 		// then just return the existing version
-		if (sprites.get(ref) != null) {
-			return (Sprite) sprites.get(ref);
+		Sprite sprite = sprites.get(ref);
+		if (sprite != null) {
+			return sprite;
 		}
-		
-		// otherwise, go away and grab the sprite from the resource
-		// loader
+
+		// otherwise it wasn't in the manifest, so we have no choice but
+		// to load it now
+		synchronized (this) {
+			sprite = sprites.get(ref);
+			if (sprite == null) {
+				System.err.println("Sprite not preloaded, loading on demand: " + ref);
+				BufferedImage image = loadImage(ref);
+				sprite = createSprite(image, createCollisionMask(image));
+				sprites.put(ref, sprite);
+			}
+		}
+		return sprite;
+	}
+
+	/**
+	 * Load an image and copy it into an accelerated image. Safe to call
+	 * from any thread.
+	 *
+	 * @param ref The reference to the image
+	 * @return The accelerated image
+	 */
+	private BufferedImage loadImage(String ref) {
+		// go away and grab the sprite from the resource loader, falling
+		// back to the file system if it isn't on the class path
 		BufferedImage sourceImage = null;
 
         try {
-            sourceImage = ImageIO.read(getClass().getResourceAsStream(ref));
-
+            InputStream in = getClass().getResourceAsStream(ref);
+            if (in == null) {
+                in = new FileInputStream(ref.replace('\\', File.separatorChar));
+            }
+            sourceImage = ImageIO.read(in);
+            in.close();
         } catch (IOException ex) {
             ex.printStackTrace();
         }
 
+        if (sourceImage == null) {
+            fail("Failed to load: "+ref);
+        }
+
 //		try {
 //			// The ClassLoader.getResource() ensures we get the sprite
 //			// from the appropriate place, this helps with deploying the game
@@ -78,15 +228,51 @@ public class SpriteStore {
 //		}
 		
 		// create an accelerated image of the right size to store our sprite in
-		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
-		Image image = gc.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
+		BufferedImage image = Sprite.createCompatibleImage(sourceImage.getWidth(),sourceImage.getHeight(),Transparency.BITMASK);
 		
 		// draw our source image into the accelerated image
-		image.getGraphics().drawImage(sourceImage,0,0,null);
-		
-		// create a sprite, add it the cache then return it
-		Sprite sprite = new Sprite(image);
-		sprites.put(ref,sprite);
+		Graphics g = image.getGraphics();
+		g.drawImage(sourceImage,0,0,null);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Work out the collision shape of a loaded image. Safe to call from
+	 * any thread.
+	 *
+	 * @param image The accelerated image of the sprite
+	 * @return The collision shape, or null if sprites collide as rectangles
+	 */
+	private CollisionMask createCollisionMask(BufferedImage image) {
+		if (!collisionMasks || image == null) {
+			return null;
+		}
+		return CollisionMask.create(image, RotatedSpriteCache.get().getStep());
+	}
+
+	/**
+	 * Create a sprite for a loaded image, packing it into the atlas
+	 *
+	 * @param image The accelerated image of the sprite
+	 * @param collisionMask The collision shape of the sprite, or null
+	 * @return The new sprite
+	 */
+	private Sprite createSprite(BufferedImage image, CollisionMask collisionMask) {
+		// pack a copy into the atlas so sprites share as few images as possible
+		AtlasRegion region = null;
+		if (atlas != null) {
+			region = atlas.add(image);
+		}
+
+		Sprite sprite = new Sprite(image, region);
+		sprite.setCollisionMask(collisionMask);
+
+		// render the rotated frames up front if asked to, otherwise
+		// they are rendered the first time each angle is drawn
+		if (Boolean.getBoolean("asteroids.rotation.prerender")) {
+			sprite.prerenderRotations();
+		}
 		
 		return sprite;
 	}
@@ -0,0 +1,505 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A broadphase that keeps the ends of every object's bounds sorted
+ * along both axes, and the set of pairs whose bounds overlap, from one
+ * step to the next. Asteroids drift slowly, so between steps the
+ * sorted order barely changes: an insertion sort puts it right again in
+ * close to one pass, and each swap it makes tells us of a pair starting
+ * or stopping overlapping on that axis. Only those changes touch the
+ * set of overlapping pairs.
+ * <p>
+ * Objects leaving the game have their ends moved past every other, so
+ * the same swaps clear away their pairs. When many objects arrive at
+ * once (a new level) everything is sorted and swept from scratch
+ * instead, which is quicker than inserting them one by one.
+ * <p>
+ * Bounds are kept unwrapped, so an object hanging off an edge of the
+ * screen reaches past it. Those few objects are checked each step
+ * against the objects along the opposite edge.
+ */
+public class SweepAndPrune implements CollisionBroadphase {
+    /** The width of the world, which wraps round */
+    private static final int WORLD_WIDTH = EntityStore.WORLD_WIDTH;
+    /** The height of the world, which wraps round */
+    private static final int WORLD_HEIGHT = EntityStore.WORLD_HEIGHT;
+    /** Where the ends of leaving objects are moved to, past every real end */
+    private static final int REMOVED = Integer.MAX_VALUE;
+    /** The mark of an empty place in the pair set */
+    private static final long EMPTY = -1L;
+
+    /** The object in each slot, or null if the slot is free */
+    private GameObject[] objects = new GameObject[64];
+    /** The index in the list of game objects of the object in each slot */
+    private int[] listIndex = new int[64];
+    /** The step each slot's object was last seen in the list */
+    private int[] seenStep = new int[64];
+    /** The left edge of each slot's bounds */
+    private int[] minX = new int[64];
+    /** The right edge of each slot's bounds */
+    private int[] maxX = new int[64];
+    /** The top edge of each slot's bounds */
+    private int[] minY = new int[64];
+    /** The bottom edge of each slot's bounds */
+    private int[] maxY = new int[64];
+    /** The slots given up by objects that left, waiting to be reused */
+    private int[] freeSlots = new int[64];
+    /** The number of free slots */
+    private int freeCount;
+    /** The number of slots ever used */
+    private int slotCount;
+    /** The number of objects being tracked */
+    private int live;
+
+    /** The ends along the x axis in order, each slot * 2, plus 1 for the right edge */
+    private int[] xAxis = new int[128];
+    /** The ends along the y axis in order, each slot * 2, plus 1 for the bottom edge */
+    private int[] yAxis = new int[128];
+    /** The place in the sorted order of each end along the x axis, from key() */
+    private long[] xKeys = new long[128];
+    /** The place in the sorted order of each end along the y axis, from key() */
+    private long[] yKeys = new long[128];
+    /** The number of ends on each axis */
+    private int ends;
+
+    /** The overlapping pairs of slots, the lower in the top half, open addressed */
+    private long[] table = new long[256];
+    /** The number of pairs in the set */
+    private int pairCount;
+
+    /** The indices in the list of objects new this step */
+    private int[] arrivals = new int[64];
+    /** The slots of the objects being swept past while rebuilding */
+    private int[] active = new int[64];
+    /** The rectangle used to read each object's bounds */
+    private Rectangle bounds = new Rectangle();
+    /** The number of steps */
+    private int step;
+
+    /** The number of objects in the last step */
+    private int lastObjects;
+    /** The number of pairs found in the last step */
+    private int lastPairs;
+    /** The number of swaps made sorting the ends last step */
+    private int lastSwaps;
+    /** The number of pairs that started overlapping last step */
+    private int lastStarted;
+    /** The number of pairs that stopped overlapping last step */
+    private int lastEnded;
+    /** The number of times everything was sorted from scratch */
+    private long rebuilds;
+
+    public SweepAndPrune() {
+        Arrays.fill(table, EMPTY);
+    }
+
+    public void findPairs(List<GameObject> gameObjects, CollisionPairs pairs) {
+        step++;
+        lastSwaps = 0;
+        lastStarted = 0;
+        lastEnded = 0;
+
+        // note where each object we know of is in the list, and which are new
+        int count = gameObjects.size();
+        int arrived = 0;
+        for (int i = 0; i < count; i++) {
+            GameObject gameObject = gameObjects.get(i);
+            int slot = gameObject.getBroadphaseSlot();
+            if (slot < 0 || slot >= slotCount || objects[slot] != gameObject) {
+                if (arrived == arrivals.length) {
+                    arrivals = Arrays.copyOf(arrivals, arrived * 2);
+                }
+                arrivals[arrived++] = i;
+                continue;
+            }
+            seenStep[slot] = step;
+            listIndex[slot] = i;
+        }
+
+        removeLeavers();
+
+        // bring the bounds of the objects that stayed up to date
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (objects[slot] != null) {
+                readBounds(slot);
+            }
+        }
+
+        // many arrivals at once are quicker to sort in from scratch
+        boolean rebuild = arrived > 64 && arrived * 4 > live;
+        for (int i = 0; i < arrived; i++) {
+            addSlot(gameObjects, arrivals[i]);
+        }
+        if (rebuild) {
+            rebuild();
+        } else {
+            sortAxis(xAxis, xKeys, true);
+            sortAxis(yAxis, yKeys, false);
+        }
+
+        // hand back every overlapping pair, as indices into the list
+        pairs.clear();
+        for (int i = 0; i < table.length; i++) {
+            long pair = table[i];
+            if (pair != EMPTY) {
+                pairs.add(listIndex[(int) (pair >>> 32)], listIndex[(int) pair]);
+            }
+        }
+        addWrappedPairs(pairs);
+        pairs.sort(count);
+
+        lastObjects = count;
+        lastPairs = pairs.size();
+    }
+
+    /**
+     * Take out the objects that are no longer in the list, moving their
+     * ends to the far end of each axis so sorting ends their pairs
+     */
+    private void removeLeavers() {
+        int removed = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (objects[slot] != null && seenStep[slot] != step) {
+                minX[slot] = REMOVED;
+                maxX[slot] = REMOVED;
+                minY[slot] = REMOVED;
+                maxY[slot] = REMOVED;
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            return;
+        }
+        sortAxis(xAxis, xKeys, true);
+        sortAxis(yAxis, yKeys, false);
+        ends -= removed * 2;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (objects[slot] != null && seenStep[slot] != step) {
+                if (objects[slot].getBroadphaseSlot() == slot) {
+                    objects[slot].setBroadphaseSlot(-1);
+                }
+                objects[slot] = null;
+                freeSlots[freeCount++] = slot;
+                live--;
+            }
+        }
+    }
+
+    /**
+     * Start tracking an object, putting its ends at the far end of each
+     * axis to be sorted into place
+     */
+    private void addSlot(List<GameObject> gameObjects, int index) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot == objects.length) {
+                growSlots(slot * 2);
+            }
+        }
+        GameObject gameObject = gameObjects.get(index);
+        objects[slot] = gameObject;
+        gameObject.setBroadphaseSlot(slot);
+        listIndex[slot] = index;
+        seenStep[slot] = step;
+        readBounds(slot);
+        xAxis[ends] = slot * 2;
+        xAxis[ends + 1] = slot * 2 + 1;
+        yAxis[ends] = slot * 2;
+        yAxis[ends + 1] = slot * 2 + 1;
+        ends += 2;
+        live++;
+    }
+
+    private void growSlots(int capacity) {
+        objects = Arrays.copyOf(objects, capacity);
+        listIndex = Arrays.copyOf(listIndex, capacity);
+        seenStep = Arrays.copyOf(seenStep, capacity);
+        minX = Arrays.copyOf(minX, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        active = Arrays.copyOf(active, capacity);
+        xAxis = Arrays.copyOf(xAxis, capacity * 2);
+        yAxis = Arrays.copyOf(yAxis, capacity * 2);
+        xKeys = Arrays.copyOf(xKeys, capacity * 2);
+        yKeys = Arrays.copyOf(yKeys, capacity * 2);
+    }
+
+    private void readBounds(int slot) {
+        objects[slot].getSweptBounds(bounds);
+        minX[slot] = bounds.x;
+        maxX[slot] = bounds.x + Math.max(0, bounds.width);
+        minY[slot] = bounds.y;
+        maxY[slot] = bounds.y + Math.max(0, bounds.height);
+    }
+
+    /**
+     * Get the place of an end in the sorted order: by position, with
+     * right (or bottom) edges before left (or top) edges at the same
+     * position, as bounds that only touch don't overlap
+     */
+    private long key(int end, boolean x) {
+        int slot = end >> 1;
+        if ((end & 1) == 0) {
+            return ((long) (x ? minX[slot] : minY[slot]) << 1) | 1;
+        }
+        return (long) (x ? maxX[slot] : maxY[slot]) << 1;
+    }
+
+    /**
+     * Put the ends along an axis back in order with an insertion sort,
+     * updating the set of overlapping pairs with each swap
+     */
+    private void sortAxis(int[] axis, long[] keys, boolean x) {
+        for (int i = 0; i < ends; i++) {
+            keys[i] = key(axis[i], x);
+        }
+        for (int i = 1; i < ends; i++) {
+            int end = axis[i];
+            long key = keys[i];
+            int j = i;
+            while (j > 0 && keys[j - 1] > key) {
+                int other = axis[j - 1];
+                if ((end & 1) == 0 && (other & 1) == 1) {
+                    // a left edge moved before a right edge: they may now overlap
+                    startOverlap(end >> 1, other >> 1);
+                } else if ((end & 1) == 1 && (other & 1) == 0) {
+                    // a right edge moved before a left edge: they no longer do
+                    endOverlap(end >> 1, other >> 1);
+                }
+                axis[j] = other;
+                keys[j] = keys[j - 1];
+                j--;
+                lastSwaps++;
+            }
+            axis[j] = end;
+            keys[j] = key;
+        }
+    }
+
+    private void startOverlap(int a, int b) {
+        if (a != b && overlaps(a, b) && addPair(a, b)) {
+            lastStarted++;
+        }
+    }
+
+    private void endOverlap(int a, int b) {
+        if (a != b && removePair(a, b)) {
+            lastEnded++;
+        }
+    }
+
+    private boolean overlaps(int a, int b) {
+        return minX[a] < maxX[b] && minX[b] < maxX[a] && minY[a] < maxY[b] && minY[b] < maxY[a];
+    }
+
+    /**
+     * Sort both axes from scratch and sweep along the x axis to find
+     * every overlapping pair
+     */
+    private void rebuild() {
+        rebuilds++;
+        Arrays.fill(table, EMPTY);
+        pairCount = 0;
+        sortFully(xAxis, xKeys, true);
+        sortFully(yAxis, yKeys, false);
+
+        // objects whose left edge has been passed but not their right
+        // edge overlap along x with whatever starts next
+        int activeCount = 0;
+        for (int i = 0; i < ends; i++) {
+            int end = xAxis[i];
+            int slot = end >> 1;
+            if ((end & 1) == 0) {
+                for (int j = 0; j < activeCount; j++) {
+                    if (overlaps(slot, active[j])) {
+                        addPair(slot, active[j]);
+                    }
+                }
+                active[activeCount++] = slot;
+            } else {
+                for (int j = 0; j < activeCount; j++) {
+                    if (active[j] == slot) {
+                        active[j] = active[--activeCount];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void sortFully(int[] axis, long[] keys, boolean x) {
+        long[] sorted = new long[ends];
+        for (int i = 0; i < ends; i++) {
+            // the key is never negative for positions on the screen, and
+            // the end itself goes in the low bits
+            sorted[i] = ((key(axis[i], x) - ((long) Integer.MIN_VALUE << 1)) << 30) | axis[i];
+        }
+        Arrays.sort(sorted);
+        for (int i = 0; i < ends; i++) {
+            axis[i] = (int) (sorted[i] & ((1 << 30) - 1));
+            keys[i] = key(axis[i], x);
+        }
+    }
+
+    /**
+     * Add the pairs that only overlap across the edge of the screen. An
+     * object reaching past the right (or bottom) edge is checked against
+     * the objects starting before the same distance from the left (or
+     * top) edge, and one reaching back past the left (or top) edge, as
+     * a swept object that has just wrapped does, against the objects
+     * ending after the same distance from the right (or bottom) edge.
+     */
+    private void addWrappedPairs(CollisionPairs pairs) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (objects[slot] == null) {
+                continue;
+            }
+            if (maxX[slot] > WORLD_WIDTH) {
+                int reach = maxX[slot] - WORLD_WIDTH;
+                for (int i = 0; i < ends && xKeys[i] >> 1 < reach; i++) {
+                    addWrappedPair(pairs, slot, xAxis[i], 0);
+                }
+            }
+            if (minX[slot] < 0) {
+                int reach = minX[slot] + WORLD_WIDTH;
+                for (int i = ends - 1; i >= 0 && xKeys[i] >> 1 > reach; i--) {
+                    addWrappedPair(pairs, slot, xAxis[i], 1);
+                }
+            }
+            if (maxY[slot] > WORLD_HEIGHT) {
+                int reach = maxY[slot] - WORLD_HEIGHT;
+                for (int i = 0; i < ends && yKeys[i] >> 1 < reach; i++) {
+                    addWrappedPair(pairs, slot, yAxis[i], 0);
+                }
+            }
+            if (minY[slot] < 0) {
+                int reach = minY[slot] + WORLD_HEIGHT;
+                for (int i = ends - 1; i >= 0 && yKeys[i] >> 1 > reach; i--) {
+                    addWrappedPair(pairs, slot, yAxis[i], 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a pair found across the edge of the screen, taking each other
+     * object once by the end given (0 for its left or top, 1 for its
+     * right or bottom)
+     */
+    private void addWrappedPair(CollisionPairs pairs, int slot, int end, int side) {
+        int other = end >> 1;
+        if ((end & 1) == side && other != slot && overlapsWrapped(slot, other)) {
+            pairs.add(listIndex[slot], listIndex[other]);
+        }
+    }
+
+    private boolean overlapsWrapped(int a, int b) {
+        boolean x = false;
+        boolean y = false;
+        for (int shift = -1; shift <= 1; shift++) {
+            x |= minX[a] + shift * WORLD_WIDTH < maxX[b] && minX[b] < maxX[a] + shift * WORLD_WIDTH;
+            y |= minY[a] + shift * WORLD_HEIGHT < maxY[b] && minY[b] < maxY[a] + shift * WORLD_HEIGHT;
+        }
+        return x && y;
+    }
+
+    /**
+     * Add a pair to the set
+     *
+     * @return True if the pair wasn't already in the set
+     */
+    private boolean addPair(int a, int b) {
+        if ((pairCount + 1) * 2 > table.length) {
+            long[] old = table;
+            table = new long[old.length * 2];
+            Arrays.fill(table, EMPTY);
+            pairCount = 0;
+            for (int i = 0; i < old.length; i++) {
+                if (old[i] != EMPTY) {
+                    insert(old[i]);
+                }
+            }
+        }
+        return insert(pairKey(a, b));
+    }
+
+    private boolean insert(long pair) {
+        int mask = table.length - 1;
+        int i = hash(pair) & mask;
+        while (table[i] != EMPTY) {
+            if (table[i] == pair) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = pair;
+        pairCount++;
+        return true;
+    }
+
+    /**
+     * Take a pair out of the set, moving back any pairs after it that
+     * would no longer be found
+     *
+     * @return True if the pair was in the set
+     */
+    private boolean removePair(int a, int b) {
+        long pair = pairKey(a, b);
+        int mask = table.length - 1;
+        int i = hash(pair) & mask;
+        while (table[i] != pair) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        int gap = i;
+        for (int j = (gap + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(table[j]) & mask;
+            // move the pair into the gap if the gap lies between its
+            // home and where it is now
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+        table[gap] = EMPTY;
+        pairCount--;
+        return true;
+    }
+
+    private static long pairKey(int a, int b) {
+        return a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+    }
+
+    private static int hash(long pair) {
+        long h = pair * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Get the number of swaps made sorting the ends last step, a measure
+     * of how much the order changed
+     *
+     * @return The number of swaps
+     */
+    public int getLastSwaps() {
+        return lastSwaps;
+    }
+
+    public String getStatistics() {
+        long all = (long) lastObjects * (lastObjects - 1) / 2;
+        return "sweep and prune: " + lastPairs + " of " + all + " pairs tested last step, " + lastSwaps
+                + " swaps, " + lastStarted + " pairs started and " + lastEnded + " ended overlapping, "
+                + rebuilds + " rebuilds";
+    }
+}
@@ -0,0 +1,217 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks that shots can't pass through what they should hit when the
+ * simulation runs slowly. Run with:
+ * <pre>
+ * java org.newdawn.spaceinvaders.SweptCollisionBenchmark [shots]
+ * </pre>
+ * Each trial fires a shot at a target (an asteroid, ship or saucer
+ * sized sprite, itself drifting) from a random direction, some close
+ * enough to the edge of the screen that the shot wraps round before it
+ * gets there. The trial is run for a second at 1000 steps a second,
+ * where a shot moves a fraction of a pixel each step and every pair is
+ * tested, which is taken as the right answer. It is then run at 10
+ * steps a second through each broadphase the game can use, two ways:
+ * <ul>
+ * <li>only testing where objects end up</li>
+ * <li>testing shots along their path</li>
+ * </ul>
+ * Every hit found at 1000 steps a second must be found by the swept
+ * test at 10 through every broadphase; if any is missed the benchmark
+ * says so and exits with an error.
+ */
+public class SweptCollisionBenchmark {
+    /** The targets shots are fired at */
+    private static final String[] TARGETS = {
+        "sprites\\SmallAsteroid1.png",
+        "sprites\\Asteroid1.png",
+        "sprites\\AlienShip.png",
+        "sprites\\ShipNormal.png",
+    };
+    /** The shots fired */
+    private static final String[] SHOTS = {
+        "sprites\\Bullet.png",
+        "sprites\\EnemyBullet.png",
+        "sprites\\RogueBullet.png",
+    };
+    /** The broadphases each trial is run through, as named to Game.createBroadphase() */
+    private static final String[] BROADPHASES = {"grid", "sap", "brute"};
+    /** The time each trial runs for (ms) */
+    private static final int DURATION = 1000;
+
+    /** The game the objects are created in */
+    private static Game game;
+
+    /**
+     * The entry point of the benchmark
+     *
+     * @param argv The number of shots to fire
+     */
+    public static void main(String argv[]) {
+        System.setProperty("java.awt.headless", "true");
+        int shots = argv.length > 0 ? Integer.parseInt(argv[0]) : 2000;
+
+        game = new Game(new HeadlessRenderBackend(800, 600));
+        game.beginPlay();
+        Random random = new Random(1);
+
+        int hits = 0;
+        int wrapped = 0;
+        int[] discreteHits = new int[BROADPHASES.length];
+        int[] discreteMissed = new int[BROADPHASES.length];
+        int[] sweptHits = new int[BROADPHASES.length];
+        int[] sweptMissed = new int[BROADPHASES.length];
+        int[] sweptExtra = new int[BROADPHASES.length];
+        long[] discreteTime = new long[BROADPHASES.length];
+        long[] sweptTime = new long[BROADPHASES.length];
+        for (int i = 0; i < shots; i++) {
+            Trial trial = new Trial(random);
+
+            GameObject.setSweptCollisions(false);
+            boolean hit = trial.run(1, "brute");
+            if (hit) {
+                hits++;
+                if (trial.wrapped) {
+                    wrapped++;
+                }
+            }
+
+            for (int b = 0; b < BROADPHASES.length; b++) {
+                GameObject.setSweptCollisions(false);
+                long start = System.nanoTime();
+                boolean discrete = trial.run(100, BROADPHASES[b]);
+                discreteTime[b] += System.nanoTime() - start;
+                GameObject.setSweptCollisions(true);
+                start = System.nanoTime();
+                boolean swept = trial.run(100, BROADPHASES[b]);
+                sweptTime[b] += System.nanoTime() - start;
+
+                if (discrete) {
+                    discreteHits[b]++;
+                } else if (hit) {
+                    discreteMissed[b]++;
+                }
+                if (swept) {
+                    sweptHits[b]++;
+                    if (!hit) {
+                        sweptExtra[b]++;
+                    }
+                } else if (hit) {
+                    sweptMissed[b]++;
+                }
+            }
+        }
+
+        System.out.println(shots + " shots fired for " + DURATION + "ms each:");
+        System.out.println("  1000 steps a second: " + hits + " hits, " + wrapped
+                + " after wrapping round the screen");
+        boolean tunneling = false;
+        for (int b = 0; b < BROADPHASES.length; b++) {
+            System.out.println("  " + BROADPHASES[b] + ", 10 steps a second, where objects end up: "
+                    + discreteHits[b] + " hits, " + discreteMissed[b] + " shots passed through their target, "
+                    + Math.round(discreteTime[b] / 1000.0 / shots) + "us per trial");
+            System.out.println("  " + BROADPHASES[b] + ", 10 steps a second, swept: " + sweptHits[b] + " hits, "
+                    + sweptMissed[b] + " shots passed through their target, " + sweptExtra[b]
+                    + " hits not seen at 1000, " + Math.round(sweptTime[b] / 1000.0 / shots) + "us per trial");
+            tunneling |= sweptMissed[b] > 0;
+        }
+        if (tunneling) {
+            System.out.println("  TUNNELING: the swept test missed hits");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * A shot fired at a target, which can be run from the start at any
+     * step length
+     */
+    private static class Trial {
+        /** The sprite of the target */
+        String target;
+        /** The sprite of the shot */
+        String shot;
+        /** The location, speed and angle of the target */
+        int targetX;
+        int targetY;
+        int targetAngle;
+        double targetDX;
+        double targetDY;
+        /** The location, angle and speed of the shot */
+        int shotX;
+        int shotY;
+        int shotAngle;
+        int shotSpeed;
+        /** True if the shot wrapped round the screen before it hit, on the last run */
+        boolean wrapped;
+
+        Trial(Random random) {
+            target = TARGETS[random.nextInt(TARGETS.length)];
+            shot = SHOTS[random.nextInt(SHOTS.length)];
+            Sprite targetSprite = SpriteStore.get().getSprite(target);
+            Sprite shotSprite = SpriteStore.get().getSprite(shot);
+
+            targetX = random.nextInt(800);
+            targetY = random.nextInt(600);
+            targetAngle = random.nextInt(360);
+            targetDX = random.nextDouble() * 200 - 100;
+            targetDY = random.nextDouble() * 200 - 100;
+
+            // aim at the target from up to 200 pixels away, passing to
+            // one side by up to the sum of the two objects' reach
+            shotAngle = random.nextInt(360);
+            shotSpeed = 300 + random.nextInt(301);
+            double directionX = Math.cos(Math.toRadians(shotAngle - 90));
+            double directionY = Math.sin(Math.toRadians(shotAngle - 90));
+            double distance = 40 + random.nextDouble() * 160;
+            double reach = targetSprite.getCollisionMask().getRadius() + shotSprite.getCollisionMask().getRadius();
+            double aside = (random.nextDouble() * 2 - 1) * reach;
+            double centerX = targetX + targetSprite.getWidth() / 2 - directionX * distance - directionY * aside;
+            double centerY = targetY + targetSprite.getHeight() / 2 - directionY * distance + directionX * aside;
+            shotX = (int) (((centerX - shotSprite.getWidth() / 2) % 800 + 800) % 800);
+            shotY = (int) (((centerY - shotSprite.getHeight() / 2) % 600 + 600) % 600);
+        }
+
+        /**
+         * Run the trial from the start
+         *
+         * @param step The length of each step (ms)
+         * @param name The name of the broadphase to find pairs with
+         * @return True if the shot hit the target
+         */
+        boolean run(int step, String name) {
+            EntityStore store = EntityStore.get();
+            store.clear();
+            ArrayList<GameObject> gameObjects = new ArrayList<GameObject>();
+            GameObject targetObject = AsteroidGameObject.create(game, target, targetX, targetY, targetAngle, false, 1);
+            targetObject.setHorizontalMovement(targetDX);
+            targetObject.setVerticalMovement(targetDY);
+            GameObject shotObject = ShotGameObject.create(game, shot, shotX, shotY, shotAngle, 0, 0, "p1", shotSpeed);
+            gameObjects.add(targetObject);
+            gameObjects.add(shotObject);
+
+            CollisionBroadphase broadphase = Game.createBroadphase(name);
+            CollisionPairs pairs = new CollisionPairs();
+            wrapped = false;
+            for (int time = 0; time < DURATION; time += step) {
+                int lastX = shotObject.getX();
+                int lastY = shotObject.getY();
+                store.savePositions();
+                store.integrate(step);
+                wrapped |= Math.abs(shotObject.getX() - lastX) > 400 || Math.abs(shotObject.getY() - lastY) > 300;
+
+                if (broadphase != null) {
+                    broadphase.findPairs(gameObjects, pairs);
+                }
+                if ((broadphase == null || pairs.size() > 0) && shotObject.collidesWith(targetObject)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.newdawn.spaceinvaders;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A set of large images (pages) that many small pictures are packed
+ * into. Pictures are placed on horizontal shelves: each goes on the
+ * shelf that fits its height most tightly, and a new shelf (or page) is
+ * started when none has room.
+ * <p>
+ * Regions that are given back are kept and reused for the next picture
+ * of exactly the same size, which suits rotated frames of one sprite.
+ */
+public class TextureAtlas {
+    /** The gap left between pictures so filtering never bleeds between them */
+    private static final int PADDING = 1;
+
+    /** A row of pictures of similar height on a page */
+    private static class Shelf {
+        /** The page the shelf is on */
+        int page;
+        /** The top edge of the shelf */
+        int y;
+        /** The height of the shelf */
+        int height;
+        /** The width of the shelf used so far */
+        int used;
+    }
+
+    /** The size of each (square) page */
+    private int pageSize;
+    /** The pages of the atlas */
+    private ArrayList<BufferedImage> pages = new ArrayList<BufferedImage>();
+    /** The height used on each page so far */
+    private ArrayList<Integer> pageHeights = new ArrayList<Integer>();
+    /** The shelves on all pages */
+    private ArrayList<Shelf> shelves = new ArrayList<Shelf>();
+    /** The regions given back, by size, waiting to be reused */
+    private HashMap<Long, ArrayList<AtlasRegion>> freeRegions = new HashMap<Long, ArrayList<AtlasRegion>>();
+    /** The area (in pixels) currently holding pictures */
+    private long usedArea;
+
+    /**
+     * Create a new, empty atlas
+     *
+     * @param pageSize The width and height of each page
+     */
+    public TextureAtlas(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Copy a picture into the atlas
+     *
+     * @param image The picture to add
+     * @return The region of the atlas now holding the picture
+     */
+    public synchronized AtlasRegion add(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // pictures too big for a page get an image of their own
+        if (width + PADDING > pageSize || height + PADDING > pageSize) {
+            return new AtlasRegion(image);
+        }
+
+        AtlasRegion region = allocate(width, height);
+        Graphics2D g = region.getPage().createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, region.getX(), region.getY(), null);
+        g.dispose();
+        usedArea += (long) width * height;
+        return region;
+    }
+
+    /**
+     * Give a region back to the atlas so its space can be reused
+     *
+     * @param region The region no longer needed
+     */
+    public synchronized void free(AtlasRegion region) {
+        if (!pages.contains(region.getPage())) {
+            return;
+        }
+        Long key = sizeKey(region.getWidth(), region.getHeight());
+        ArrayList<AtlasRegion> free = freeRegions.get(key);
+        if (free == null) {
+            free = new ArrayList<AtlasRegion>();
+            freeRegions.put(key, free);
+        }
+        free.add(region);
+        usedArea -= (long) region.getWidth() * region.getHeight();
+    }
+
+    /**
+     * Find space for a picture of the given size
+     */
+    private AtlasRegion allocate(int width, int height) {
+        ArrayList<AtlasRegion> free = freeRegions.get(sizeKey(width, height));
+        if (free != null && !free.isEmpty()) {
+            return free.remove(free.size() - 1);
+        }
+
+        // the shelf with room that wastes the least height
+        Shelf best = null;
+        for (Shelf shelf : shelves) {
+            if (shelf.height >= height && shelf.used + width + PADDING <= pageSize
+                    && (best == null || shelf.height < best.height)) {
+                best = shelf;
+            }
+        }
+
+        if (best == null) {
+            best = new Shelf();
+            best.page = pages.size() - 1;
+            if (best.page < 0 || pageHeights.get(best.page) + height + PADDING > pageSize) {
+                pages.add(Sprite.createCompatibleImage(pageSize, pageSize, Transparency.TRANSLUCENT));
+                pageHeights.add(0);
+                best.page = pages.size() - 1;
+            }
+            best.y = pageHeights.get(best.page);
+            best.height = height;
+            pageHeights.set(best.page, best.y + height + PADDING);
+            shelves.add(best);
+        }
+
+        AtlasRegion region = new AtlasRegion(pages.get(best.page), best.used, best.y, width, height);
+        best.used += width + PADDING;
+        return region;
+    }
+
+    private static Long sizeKey(int width, int height) {
+        return Long.valueOf(((long) width << 32) | height);
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Get the fraction of the atlas pages holding pictures
+     *
+     * @return The occupancy between 0 and 1
+     */
+    public synchronized double getOccupancy() {
+        return pages.isEmpty() ? 0 : (double) usedArea / ((long) pages.size() * pageSize * pageSize);
+    }
+}
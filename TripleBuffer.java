@@ -0,0 +1,82 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands values from one thread that writes them to another that reads
+ * them, without either ever waiting on a lock. There are three values:
+ * the writer fills in the back one while the reader uses the front one,
+ * and the third holds the latest value published, waiting to be picked
+ * up. Publishing and picking up each swap a value with the middle one
+ * in a single atomic step.
+ * <p>
+ * The reader always gets the newest value published; values published
+ * faster than they are read are simply overwritten.
+ */
+public class TripleBuffer<T> {
+    /** The flag set on the middle index when it holds a value not yet read */
+    private static final int FRESH = 4;
+
+    /** The three values */
+    private final T[] values;
+    /** The index of the middle value, plus FRESH if it has not been read */
+    private final AtomicInteger middle = new AtomicInteger(1);
+    /** The index of the value the writer is filling in */
+    private int back = 0;
+    /** The index of the value the reader is using */
+    private int front = 2;
+
+    /**
+     * Create a buffer over three values, which are reused in turn
+     *
+     * @param first The first value
+     * @param second The second value
+     * @param third The third value
+     */
+    @SuppressWarnings("unchecked")
+    public TripleBuffer(T first, T second, T third) {
+        values = (T[]) new Object[] {first, second, third};
+    }
+
+    /**
+     * Get the value the writer should fill in next. Only to be called
+     * by the writing thread.
+     *
+     * @return The back value
+     */
+    public T getBack() {
+        return values[back];
+    }
+
+    /**
+     * Publish the back value to the reader. Only to be called by the
+     * writing thread.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Pick up the latest value published, if there is one the reader has
+     * not seen. Only to be called by the reading thread.
+     *
+     * @return True if a new value was picked up
+     */
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        front = middle.getAndSet(front) & ~FRESH;
+        return true;
+    }
+
+    /**
+     * Get the value the reader is using. Only to be called by the
+     * reading thread.
+     *
+     * @return The front value
+     */
+    public T getFront() {
+        return values[front];
+    }
+}
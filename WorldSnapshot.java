@@ -0,0 +1,84 @@
+package org.newdawn.spaceinvaders;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A copy of everything needed to draw one frame: where each game object
+ * is, which way it faces and what it looks like, and which screen is
+ * shown over the top. The simulation fills one in after each update so
+ * it can be drawn on another thread while the game moves on.
+ */
+public class WorldSnapshot {
+    /** The sprite of each object */
+    private Sprite[] sprites = new Sprite[64];
+    /** The x location of each object */
+    private int[] xs = new int[64];
+    /** The y location of each object */
+    private int[] ys = new int[64];
+    /** The angle of each object */
+    private int[] angles = new int[64];
+    /** The layer of each object */
+    private RenderLayer[] layers = new RenderLayer[64];
+    /** The number of objects */
+    private int count;
+    /** The screen shown over the game, or null if there isn't one */
+    private OverlayLayer screen;
+    /** The time (from System.nanoTime()) the snapshot was taken */
+    private long simulationTime;
+
+    /**
+     * Copy the state of the game into this snapshot, with each object
+     * part of the way between where it was at the start of the last
+     * simulation step and where it is now
+     *
+     * @param gameObjects The objects in the game
+     * @param screen The screen shown over the game, or null if there isn't one
+     * @param alpha How far (0 to 1) through the next step to draw the objects
+     */
+    public void capture(List<GameObject> gameObjects, OverlayLayer screen, float alpha) {
+        Arrays.fill(sprites, 0, count, null);
+        count = 0;
+        for (int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            if (count == sprites.length) {
+                sprites = Arrays.copyOf(sprites, count * 2);
+                xs = Arrays.copyOf(xs, count * 2);
+                ys = Arrays.copyOf(ys, count * 2);
+                angles = Arrays.copyOf(angles, count * 2);
+                layers = Arrays.copyOf(layers, count * 2);
+            }
+            sprites[count] = gameObject.getSprite();
+            xs[count] = gameObject.getInterpolatedX(alpha);
+            ys[count] = gameObject.getInterpolatedY(alpha);
+            angles[count] = gameObject.getInterpolatedAngle(alpha);
+            layers[count] = gameObject.getRenderLayer();
+            count++;
+        }
+        this.screen = screen;
+        simulationTime = System.nanoTime();
+    }
+
+    /**
+     * Record a draw of every object in the snapshot
+     *
+     * @param queue The queue to record the draws in
+     */
+    public void queueDraws(RenderQueue queue) {
+        for (int i = 0; i < count; i++) {
+            queue.add(sprites[i], xs[i], ys[i], angles[i], layers[i]);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public OverlayLayer getScreen() {
+        return screen;
+    }
+
+    public long getSimulationTime() {
+        return simulationTime;
+    }
+}